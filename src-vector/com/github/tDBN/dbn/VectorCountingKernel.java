@@ -0,0 +1,109 @@
+package com.github.tDBN.dbn;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Counting loops over whole vectors of rows, using the incubating Vector API.
+ * Matching a column against a value is a single lane-wise comparison, and
+ * the resulting masks are combined and counted without branches. Rows that
+ * do not fill a whole vector are processed by the scalar loops.
+ * <p>
+ * This class needs JDK 17 or later and --add-modules jdk.incubator.vector,
+ * both to compile and to run, and is loaded by CountingKernels only when
+ * available.
+ * 
+ * @author zlm
+ * 
+ */
+public class VectorCountingKernel extends ScalarCountingKernel {
+
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	/**
+	 * Largest number of child values that are counted with one comparison per
+	 * value. Beyond it, matching rows are counted one at a time.
+	 */
+	private static final int MAX_COMPARED_VALUES = 4;
+
+	@Override
+	public int countMatches(int[][] columns, int[] indices, int[] values, int childIndex, int childValue, int from,
+			int to) {
+
+		int matches = 0;
+		int upper = from + SPECIES.loopBound(to - from);
+		int s = from;
+
+		for (; s < upper; s += SPECIES.length()) {
+			VectorMask<Integer> mask = SPECIES.maskAll(true);
+			for (int i = 0; i < indices.length; i++) {
+				mask = mask.and(IntVector.fromArray(SPECIES, columns[indices[i]], s).compare(VectorOperators.EQ,
+						values[i]));
+			}
+			if (childIndex >= 0) {
+				mask = mask.and(IntVector.fromArray(SPECIES, columns[childIndex], s).compare(VectorOperators.EQ,
+						childValue));
+			}
+			matches += mask.trueCount();
+		}
+		return matches + super.countMatches(columns, indices, values, childIndex, childValue, s, to);
+	}
+
+	@Override
+	public void countChildValues(int[][] columns, int[] indices, int[] values, int[] childColumn, int from, int to,
+			int[] childCounts) {
+
+		int childRange = childCounts.length;
+		if (indices.length == 0 && childRange > MAX_COMPARED_VALUES) {
+			super.countChildValues(columns, indices, values, childColumn, from, to, childCounts);
+			return;
+		}
+
+		int upper = from + SPECIES.loopBound(to - from);
+		int s = from;
+
+		for (; s < upper; s += SPECIES.length()) {
+			VectorMask<Integer> mask = SPECIES.maskAll(true);
+			for (int i = 0; i < indices.length; i++) {
+				mask = mask.and(IntVector.fromArray(SPECIES, columns[indices[i]], s).compare(VectorOperators.EQ,
+						values[i]));
+			}
+			if (!mask.anyTrue())
+				continue;
+
+			if (childRange <= MAX_COMPARED_VALUES) {
+				IntVector child = IntVector.fromArray(SPECIES, childColumn, s);
+				for (int k = 0; k < childRange; k++)
+					childCounts[k] += child.compare(VectorOperators.EQ, k).and(mask).trueCount();
+			} else {
+				long lanes = mask.toLong();
+				while (lanes != 0) {
+					childCounts[childColumn[s + Long.numberOfTrailingZeros(lanes)]]++;
+					lanes &= lanes - 1;
+				}
+			}
+		}
+		super.countChildValues(columns, indices, values, childColumn, s, to, childCounts);
+	}
+
+	@Override
+	public void addScaled(int[] configurations, int[] column, int multiplier, int[] result, int from, int to) {
+
+		int upper = from + SPECIES.loopBound(to - from);
+		int s = from;
+
+		for (; s < upper; s += SPECIES.length()) {
+			IntVector.fromArray(SPECIES, column, s).mul(multiplier)
+					.add(IntVector.fromArray(SPECIES, configurations, s)).intoArray(result, s);
+		}
+		super.addScaled(configurations, column, multiplier, result, s, to);
+	}
+
+	@Override
+	public String getName() {
+		return "vector(" + SPECIES.length() + "x32)";
+	}
+
+}
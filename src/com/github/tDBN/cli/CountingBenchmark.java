@@ -0,0 +1,153 @@
+package com.github.tDBN.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.github.tDBN.dbn.CountingKernel;
+import com.github.tDBN.dbn.CountingKernels;
+
+/**
+ * Measures the counting kernels on random columns, for several attribute
+ * ranges. Prints the time per row of each loop and each kernel, and the
+ * speedup of the vector kernel over the scalar one. To include the vector
+ * kernel, put the classes compiled from src-vector on the classpath and run
+ * with --add-modules jdk.incubator.vector.
+ * <p>
+ * Usage: CountingBenchmark [numRows [numRepetitions]]
+ * 
+ * @author zlm
+ * 
+ */
+public class CountingBenchmark {
+
+	private static final int[] RANGES = { 2, 3, 4, 8, 16, 64 };
+
+	private static final int NUM_PARENTS = 2;
+
+	private static final int WARM_UP_ROWS = 1 << 12;
+
+	private static final String[] LOOP_NAMES = { "countMatches", "countChildValues", "childHistogram", "addScaled" };
+
+	// prevents the loops from being removed as dead code
+	private static long sink = 0;
+
+	public static void main(String[] args) {
+
+		int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+		int numRepetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		List<CountingKernel> kernels = new ArrayList<CountingKernel>();
+		kernels.add(CountingKernels.scalar());
+		if (CountingKernels.vector() != null)
+			kernels.add(CountingKernels.vector());
+		else
+			System.out.println("Vector kernel not available, timing the scalar kernel only.");
+
+		System.out.println("rows: " + numRows + ", repetitions: " + numRepetitions + ", default kernel: "
+				+ CountingKernels.get().getName());
+		System.out.printf("%-6s %-18s", "range", "loop");
+		for (CountingKernel kernel : kernels)
+			System.out.printf(" %14s", kernel.getName() + " ns/row");
+		if (kernels.size() > 1)
+			System.out.printf(" %8s", "speedup");
+		System.out.println();
+
+		Random random = new Random(0);
+		int[] indices = new int[NUM_PARENTS];
+		int[] values = new int[NUM_PARENTS];
+		for (int i = 0; i < NUM_PARENTS; i++)
+			indices[i] = i;
+
+		// compiles all loops of all kernels before timing any of them
+		int[][] warmUpColumns = randomColumns(random, 4, WARM_UP_ROWS);
+		int[] warmUpResult = new int[WARM_UP_ROWS];
+		for (CountingKernel kernel : kernels)
+			for (int loop = 0; loop < LOOP_NAMES.length; loop++)
+				for (int r = 0; r < 1000; r++)
+					run(kernel, loop, warmUpColumns, indices, values, 4, warmUpResult, warmUpResult, WARM_UP_ROWS);
+
+		for (int range : RANGES) {
+			int[][] columns = randomColumns(random, range, numRows);
+			int[] configurations = new int[numRows];
+			int[] result = new int[numRows];
+
+			for (int loop = 0; loop < LOOP_NAMES.length; loop++) {
+				double[] times = new double[kernels.size()];
+				for (int k = 0; k < kernels.size(); k++) {
+					CountingKernel kernel = kernels.get(k);
+					// first round is warm-up
+					for (int round = 0; round < 2; round++) {
+						long numPasses = 0;
+						long start = System.nanoTime();
+						for (int r = 0; r < numRepetitions; r++)
+							numPasses += run(kernel, loop, columns, indices, values, range, configurations, result,
+									numRows);
+						times[k] = (double) (System.nanoTime() - start) / numPasses / numRows;
+					}
+				}
+				System.out.printf("%-6d %-18s", range, LOOP_NAMES[loop]);
+				for (double time : times)
+					System.out.printf(" %14.3f", time);
+				if (times.length > 1)
+					System.out.printf(" %7.2fx", times[0] / times[1]);
+				System.out.println();
+			}
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+
+	private static int[][] randomColumns(Random random, int range, int numRows) {
+		int[][] columns = new int[NUM_PARENTS + 1][numRows];
+		for (int[] column : columns)
+			for (int s = 0; s < numRows; s++)
+				column[s] = random.nextInt(range);
+		return columns;
+	}
+
+	/**
+	 * Runs one of the loops and returns the number of passes over the rows.
+	 */
+	private static int run(CountingKernel kernel, int loop, int[][] columns, int[] indices, int[] values, int range,
+			int[] configurations, int[] result, int numRows) {
+
+		int[] childColumn = columns[NUM_PARENTS];
+		int numPasses = 0;
+		switch (loop) {
+		case 0:
+			// first configurations of the parents and the child
+			for (int j = 0; j < range * range && j < 16; j++) {
+				values[0] = j % range;
+				values[1] = j / range;
+				for (int k = 0; k < range && k < 4; k++) {
+					sink += kernel.countMatches(columns, indices, values, NUM_PARENTS, k, 0, numRows);
+					numPasses++;
+				}
+			}
+			break;
+		case 1:
+			for (int j = 0; j < range * range && j < 16; j++) {
+				values[0] = j % range;
+				values[1] = j / range;
+				int[] childCounts = new int[range];
+				kernel.countChildValues(columns, indices, values, childColumn, 0, numRows, childCounts);
+				sink += childCounts[0];
+				numPasses++;
+			}
+			break;
+		case 2:
+			int[] childCounts = new int[range];
+			kernel.countChildValues(columns, new int[0], new int[0], childColumn, 0, numRows, childCounts);
+			sink += childCounts[0];
+			numPasses++;
+			break;
+		default:
+			kernel.addScaled(configurations, columns[0], range, result, 0, numRows);
+			sink += result[numRows - 1];
+			numPasses++;
+		}
+		return numPasses;
+	}
+
+}
@@ -1,6 +1,9 @@
 package com.github.tDBN.cli;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -11,11 +14,18 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import com.github.tDBN.dbn.BDeuScoringFunction;
+import com.github.tDBN.dbn.Discretization;
 import com.github.tDBN.dbn.DynamicBayesNet;
+import com.github.tDBN.dbn.FNMLScoringFunction;
 import com.github.tDBN.dbn.LLScoringFunction;
 import com.github.tDBN.dbn.MDLScoringFunction;
 import com.github.tDBN.dbn.Observations;
+import com.github.tDBN.dbn.PenalizedScoringFunction;
+import com.github.tDBN.dbn.Penalty;
+import com.github.tDBN.dbn.Schema;
 import com.github.tDBN.dbn.Scores;
+import com.github.tDBN.dbn.ScoringFunction;
 import com.github.tDBN.utils.Utils;
 
 public class LearnFromFile {
@@ -42,8 +52,11 @@ public class LearnFromFile {
 				.withDescription("Root node of the intra-slice tree. By default, root is arbitrary.")
 				.withLongOpt("root").create("r");
 
-		Option scoringFunction = OptionBuilder.hasArg()
-				.withDescription("Scoring function to be used, either MDL or LL. MDL is used by default.")
+		Option scoringFunction = OptionBuilder
+				.hasArgs()
+				.withValueSeparator(',')
+				.withDescription(
+						"Scoring function to be used, either MDL (also BIC), AIC, LL, fNML or BDeu, the last optionally followed by :<ess> for its equivalent sample size (1 by default). MDL is used by default. If several are given, separated by commas, all are evaluated in a single pass and one network is output for each.")
 				.withLongOpt("scoringFunction").create("s");
 
 		Option dotFormat = OptionBuilder
@@ -76,6 +89,80 @@ public class LearnFromFile {
 		Option parameters = OptionBuilder.withDescription("Learns and outputs the network parameters.")
 				.withLongOpt("parameters").create("pm");
 
+		Option selectedAttributes = OptionBuilder
+				.withArgName("name|int,...")
+				.hasArgs()
+				.withValueSeparator(',')
+				.withDescription(
+						"Attributes (names or indices) to be used for network learning. By default, all attributes in the input file are used.")
+				.withLongOpt("attributes").create("a");
+
+		Option numBins = OptionBuilder
+				.withArgName("int")
+				.hasArg()
+				.withDescription(
+						"Discretizes numeric attributes with more than <int> distinct values into <int> bins of equal width.")
+				.withLongOpt("numBins").create("b");
+
+		Option equalFrequency = OptionBuilder
+				.withDescription("Discretizes numeric attributes into bins of equal frequency instead of equal width.")
+				.withLongOpt("equalFrequency").create("bf");
+
+		Option cutPoints = OptionBuilder
+				.withArgName("name:float:...")
+				.hasArgs()
+				.withDescription(
+						"Discretizes the named numeric attribute using the supplied cut points. Can be given for several attributes.")
+				.withLongOpt("cutPoints").create("cp");
+
+		Option schemaFile = OptionBuilder
+				.withArgName("file")
+				.hasArg()
+				.withDescription(
+						"Schema file declaring the type and values of each attribute. Input values not declared are rejected.")
+				.withLongOpt("schema").create("sc");
+
+		Option cacheBudget = OptionBuilder
+				.withArgName("int")
+				.hasArg()
+				.withDescription(
+						"Memoizes parents' configurations for counting, using at most <int> MB. By default, no memoization is done.")
+				.withLongOpt("cacheBudget").create("cb");
+
+		Option grayCode = OptionBuilder
+				.withDescription(
+						"Counts parents' configurations incrementally, updating them between parent sets that differ by a single node. Ignored if -cb is given.")
+				.withLongOpt("grayCode").create("gc");
+
+		Option prune = OptionBuilder
+				.withDescription(
+						"Skips parent sets whose MDL or AIC score is bounded below the best score found, returning the same network. Ignored with -s ll.")
+				.withLongOpt("prune").create("pr");
+
+		Option maxParentsRange = OptionBuilder
+				.withArgName("int")
+				.hasArg()
+				.withDescription(
+						"Skips parent sets with more than <int> configurations, unless they have a single parent from previous time slices. By default, all parent sets are evaluated.")
+				.withLongOpt("maxParentsRange").create("mr");
+
+		Option candidateParents = OptionBuilder
+				.withArgName("int")
+				.hasArg()
+				.withDescription(
+						"Restricts the parents of each attribute, in previous and in the same time slice, to the <int> attributes with the highest mutual information with it. By default, all attributes are candidates.")
+				.withLongOpt("candidateParents").create("k");
+
+		Option lagSweep = OptionBuilder
+				.withDescription(
+						"Learns one network for each Markov lag from 1 to the one given by --markovLag in a single pass, all scored on the same transitions, and outputs the network and score of each lag.")
+				.withLongOpt("lagSweep").create("ls");
+
+		Option parentsSweep = OptionBuilder
+				.withDescription(
+						"Learns one network for each maximum number of parents from 1 to the one given by --numParents in a single pass, and outputs the network and score of each. Ignored if -ls is given.")
+				.withLongOpt("parentsSweep").create("ps");
+
 		options.addOption(inputFile);
 		options.addOption(numParents);
 		options.addOption(outputFile);
@@ -87,6 +174,18 @@ public class LearnFromFile {
 		options.addOption(spanningTree);
 		options.addOption(nonStationary);
 		options.addOption(parameters);
+		options.addOption(selectedAttributes);
+		options.addOption(numBins);
+		options.addOption(equalFrequency);
+		options.addOption(cutPoints);
+		options.addOption(schemaFile);
+		options.addOption(cacheBudget);
+		options.addOption(grayCode);
+		options.addOption(prune);
+		options.addOption(maxParentsRange);
+		options.addOption(candidateParents);
+		options.addOption(lagSweep);
+		options.addOption(parentsSweep);
 
 		CommandLineParser parser = new GnuParser();
 		try {
@@ -102,24 +201,113 @@ public class LearnFromFile {
 			int markovLag = Integer.parseInt(cmd.getOptionValue("m", "1"));
 			int root = Integer.parseInt(cmd.getOptionValue("r", "-1"));
 
-			Observations o = new Observations(cmd.getOptionValue("i"), markovLag);
+			List<String> attributes = cmd.hasOption("a") ? Arrays.asList(cmd.getOptionValues("a")) : null;
+
+			Discretization discretization = null;
+			if (cmd.hasOption("b") || cmd.hasOption("cp")) {
+				discretization = new Discretization(Integer.parseInt(cmd.getOptionValue("b", "0")),
+						cmd.hasOption("bf"));
+				if (cmd.hasOption("cp")) {
+					for (String attributeCutPoints : cmd.getOptionValues("cp")) {
+						String[] parts = attributeCutPoints.split(":");
+						float[] values = new float[parts.length - 1];
+						for (int i = 1; i < parts.length; i++)
+							values[i - 1] = Float.parseFloat(parts[i]);
+						discretization.setCutPoints(parts[0], values);
+					}
+				}
+			}
+
+			Schema schema = cmd.hasOption("sc") ? new Schema(cmd.getOptionValue("sc")) : null;
+
+			Observations o = new Observations(cmd.getOptionValue("i"), null, markovLag, attributes, discretization,
+					schema);
+
+			if (cmd.hasOption("cb"))
+				o.setCountCacheBudget(Long.parseLong(cmd.getOptionValue("cb")) * 1024 * 1024);
+			else if (cmd.hasOption("gc"))
+				o.setIncrementalCounting(true);
 
 			Scores s = new Scores(o, Integer.parseInt(cmd.getOptionValue("p")), stationary, verbose);
-			if (cmd.hasOption("s") && cmd.getOptionValue("s").equalsIgnoreCase("ll")) {
+			s.setPruning(cmd.hasOption("pr"));
+			if (cmd.hasOption("mr"))
+				s.setMaxParentsRange(Long.parseLong(cmd.getOptionValue("mr")));
+			if (cmd.hasOption("k"))
+				s.setNumCandidateParents(Integer.parseInt(cmd.getOptionValue("k")));
+
+			String[] criteria = cmd.hasOption("s") ? cmd.getOptionValues("s") : new String[] { "mdl" };
+			List<ScoringFunction> scoringFunctions = new ArrayList<ScoringFunction>(criteria.length);
+			for (String criterion : criteria) {
+				if (criterion.equalsIgnoreCase("ll"))
+					scoringFunctions.add(new LLScoringFunction());
+				else if (criterion.equalsIgnoreCase("fnml"))
+					scoringFunctions.add(new FNMLScoringFunction());
+				else if (criterion.toLowerCase().startsWith("bdeu")) {
+					String[] parts = criterion.split(":");
+					double ess = 1;
+					if (parts.length > 1) {
+						try {
+							ess = Double.parseDouble(parts[1]);
+						} catch (NumberFormatException e) {
+							throw new ParseException("BDeu equivalent sample size is not a number: " + parts[1]);
+						}
+						if (!(ess > 0)) {
+							System.err.println("BDeu equivalent sample size must be positive: " + parts[1]);
+							System.exit(1);
+						}
+					}
+					scoringFunctions.add(new BDeuScoringFunction(ess));
+				} else if (criterion.equalsIgnoreCase("aic"))
+					scoringFunctions.add(new PenalizedScoringFunction(Penalty.AIC));
+				else
+					scoringFunctions.add(new MDLScoringFunction());
+			}
+
+			// scores of each criterion, and of each lag if sweeping lags
+			List<Scores> results = new ArrayList<Scores>();
+			List<String> labels = new ArrayList<String>();
+			if (cmd.hasOption("ls")) {
+				for (ScoringFunction sf : scoringFunctions) {
+					if (verbose)
+						System.out.println("Evaluating networks of Markov lags 1 to " + markovLag + " with " + sf
+								+ " score.");
+					Scores[] lagScores = s.evaluateLags(sf);
+					for (int k = 0; k < lagScores.length; k++) {
+						results.add(lagScores[k]);
+						labels.add((scoringFunctions.size() > 1 ? sf + ", " : "") + "Markov lag " + (k + 1));
+					}
+				}
+			} else if (cmd.hasOption("ps")) {
+				int maxParents = Integer.parseInt(cmd.getOptionValue("p"));
+				for (ScoringFunction sf : scoringFunctions) {
+					if (verbose)
+						System.out.println("Evaluating networks with at most 1 to " + maxParents + " parents with "
+								+ sf + " score.");
+					Scores[] parentsScores = s.evaluateMaxParents(sf);
+					for (int p = 0; p < parentsScores.length; p++) {
+						results.add(parentsScores[p]);
+						labels.add((scoringFunctions.size() > 1 ? sf + ", " : "") + "Max parents " + (p + 1));
+					}
+				}
+			} else if (scoringFunctions.size() == 1) {
 				if (verbose)
-					System.out.println("Evaluating network with LL score.");
-				s.evaluate(new LLScoringFunction());
+					System.out.println("Evaluating network with " + scoringFunctions.get(0) + " score.");
+				results.add(s.evaluate(scoringFunctions.get(0)));
+				labels.add(scoringFunctions.get(0).toString());
 			} else {
 				if (verbose)
-					System.out.println("Evaluating network with MDL score.");
-				s.evaluate(new MDLScoringFunction());
+					System.out.println("Evaluating networks with " + scoringFunctions + " scores.");
+				results.addAll(Arrays.asList(s.evaluate(scoringFunctions)));
+				for (ScoringFunction sf : scoringFunctions)
+					labels.add(sf.toString());
 			}
 
+			if (verbose && o.getCountCache() != null)
+				System.out.println(o.getCountCache());
+
 			// if (verbose)
 			// System.out.println(s);
 
-			DynamicBayesNet dbn;
-
 			if (verbose) {
 				if (cmd.hasOption("r"))
 					System.out.println("Root node specified: " + root);
@@ -129,23 +317,35 @@ public class LearnFromFile {
 					System.out.println("Finding a maximum branching.");
 			}
 
-			dbn = s.toDBN(root, spanning);
+			StringBuilder output = new StringBuilder();
+			for (int k = 0; k < results.size(); k++) {
 
-			if (printParameters)
-				dbn.learnParameters(o);
+				if (verbose && results.size() > 1)
+					System.out.println(labels.get(k) + ":");
 
-			String output;
-			if (cmd.hasOption("d")) {
-				if (cmd.hasOption("c") && markovLag == 1)
-					output = dbn.toDot(true);
-				else
-					output = dbn.toDot(false);
-			} else
-				output = dbn.toString(printParameters);
+				Observations resultObservations = results.get(k).getObservations();
+				DynamicBayesNet dbn = results.get(k).toDBN(root, spanning);
+
+				if (printParameters)
+					dbn.learnParameters(resultObservations);
+
+				if (k > 0)
+					output.append(System.getProperty("line.separator"));
+				if (results.size() > 1 && !cmd.hasOption("d"))
+					output.append(labels.get(k) + " network:" + System.getProperty("line.separator"));
+
+				if (cmd.hasOption("d")) {
+					if (cmd.hasOption("c") && resultObservations.getMarkovLag() == 1)
+						output.append(dbn.toDot(true));
+					else
+						output.append(dbn.toDot(false));
+				} else
+					output.append(dbn.toString(printParameters));
+			}
 
 			if (cmd.hasOption("o")) {
 				try {
-					Utils.writeToFile(cmd.getOptionValue("o"), output);
+					Utils.writeToFile(cmd.getOptionValue("o"), output.toString());
 				} catch (FileNotFoundException e) {
 					e.printStackTrace();
 				}
@@ -158,7 +358,17 @@ public class LearnFromFile {
 				System.out.println(output);
 			}
 
+			if (verbose && (cmd.hasOption("ls") || cmd.hasOption("ps"))) {
+				if (cmd.hasOption("ls"))
+					System.out.println("Network scores, on the transitions of Markov lag " + markovLag + ":");
+				else
+					System.out.println("Network scores:");
+				for (int k = 0; k < results.size(); k++)
+					System.out.println(labels.get(k) + ": " + Arrays.toString(results.get(k).getNetworkScores()));
+			}
+
 		} catch (ParseException e) {
+			System.err.println(e.getMessage());
 			HelpFormatter formatter = new HelpFormatter();
 			formatter.printHelp("tDBN", options);
 		}
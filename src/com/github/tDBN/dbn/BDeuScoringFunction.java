@@ -0,0 +1,77 @@
+package com.github.tDBN.dbn;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bayesian Dirichlet equivalent uniform (BDeu) score, the log marginal
+ * likelihood of a family under a Dirichlet prior with an equivalent sample
+ * size spread uniformly over the q parents' configurations and r child
+ * values. For each parents' configuration j,
+ * 
+ * lgamma(ess/q) - lgamma(ess/q + N_ij) + sum_k lgamma(ess/(q*r) + N_ijk) -
+ * lgamma(ess/(q*r)),
+ * 
+ * where both differences are looked up in log-gamma tables cached per
+ * hyperparameter, so scoring a count table costs about the same as its
+ * log-likelihood.
+ * 
+ * @author zlm
+ * 
+ */
+public class BDeuScoringFunction extends DecomposableScoringFunction {
+
+	private double equivalentSampleSize;
+
+	/**
+	 * Log-gamma tables of each hyperparameter ess/q or ess/(q*r) used so far.
+	 */
+	private Map<Double, LogGammaTable> logGammaTables = new HashMap<Double, LogGammaTable>();
+
+	public BDeuScoringFunction() {
+		this(1);
+	}
+
+	public BDeuScoringFunction(double equivalentSampleSize) {
+		this.equivalentSampleSize = equivalentSampleSize;
+	}
+
+	@Override
+	protected double addScore(double score, int[] Nijk, LocalConfiguration c, Observations observations) {
+
+		int childRange = c.getChildRange();
+		// always at least one parents' configuration
+		double parentsRange = Math.max(c.getNumParentConfigurations(), 1);
+		LogGammaTable parentsTable = getLogGammaTable(equivalentSampleSize / parentsRange);
+		LogGammaTable cellTable = getLogGammaTable(equivalentSampleSize / (parentsRange * childRange));
+
+		for (int j = 0; j < Nijk.length; j += childRange) {
+			int Nij = 0;
+			for (int k = 0; k < childRange; k++) {
+				Nij += Nijk[j + k];
+				score += cellTable.logGammaRatio(Nijk[j + k]);
+			}
+			score -= parentsTable.logGammaRatio(Nij);
+		}
+		return score;
+	}
+
+	private LogGammaTable getLogGammaTable(double alpha) {
+		LogGammaTable table = logGammaTables.get(alpha);
+		if (table == null) {
+			table = new LogGammaTable(alpha);
+			logGammaTables.put(alpha, table);
+		}
+		return table;
+	}
+
+	public double getEquivalentSampleSize() {
+		return equivalentSampleSize;
+	}
+
+	@Override
+	public String toString() {
+		return "BDeu";
+	}
+
+}
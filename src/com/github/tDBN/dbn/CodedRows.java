@@ -0,0 +1,195 @@
+package com.github.tDBN.dbn;
+
+import java.util.Arrays;
+
+/**
+ * Coded observations of a transition, one row per subject and one column per
+ * attribute of the transition. Rows are stored one after the other in a
+ * single array of the narrowest primitive type that holds all codes: byte for
+ * codes up to 255, short for codes up to 65535 and int otherwise. Rows can be
+ * appended while reading, and the array is widened if a larger code is added.
+ * 
+ * @author zlm
+ * 
+ */
+public class CodedRows {
+
+	private static final int MAX_BYTE_CODE = 0xFF;
+
+	private static final int MAX_SHORT_CODE = 0xFFFF;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int numColumns;
+
+	private int numRows = 0;
+
+	/**
+	 * Codes of all rows, in exactly one of these arrays.
+	 */
+	private byte[] bytes;
+
+	private short[] shorts;
+
+	private int[] ints;
+
+	/**
+	 * Allocates an empty set of rows.
+	 * 
+	 * @param maxCode
+	 *            largest code expected, which determines the initial type of
+	 *            storage
+	 */
+	public CodedRows(int numColumns, int maxCode) {
+		this.numColumns = numColumns;
+		int capacity = INITIAL_CAPACITY * numColumns;
+		if (maxCode <= MAX_BYTE_CODE)
+			bytes = new byte[capacity];
+		else if (maxCode <= MAX_SHORT_CODE)
+			shorts = new short[capacity];
+		else
+			ints = new int[capacity];
+	}
+
+	/**
+	 * Copies the first numRows rows of a matrix of codes.
+	 */
+	public CodedRows(int[][] rows, int numRows, int numColumns) {
+		this(numColumns, maxCode(rows, numRows));
+		ensureCapacity(numRows);
+		for (int s = 0; s < numRows; s++)
+			addRow(rows[s]);
+	}
+
+	private static int maxCode(int[][] rows, int numRows) {
+		int maxCode = 0;
+		for (int s = 0; s < numRows; s++)
+			for (int value : rows[s])
+				maxCode = value < 0 ? Integer.MAX_VALUE : Math.max(maxCode, value);
+		return maxCode;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	public int numColumns() {
+		return numColumns;
+	}
+
+	public int get(int row, int column) {
+		int i = row * numColumns + column;
+		if (bytes != null)
+			return bytes[i] & MAX_BYTE_CODE;
+		if (shorts != null)
+			return shorts[i] & MAX_SHORT_CODE;
+		return ints[i];
+	}
+
+	/**
+	 * Returns the codes of a row in the columns [from, to[.
+	 */
+	public int[] getRow(int row, int from, int to) {
+		int[] values = new int[to - from];
+		for (int j = from; j < to; j++)
+			values[j - from] = get(row, j);
+		return values;
+	}
+
+	public int[] getRow(int row) {
+		return getRow(row, 0, numColumns);
+	}
+
+	/**
+	 * Copies the codes of a column into an array, starting at some offset.
+	 */
+	public void getColumn(int column, int[] values, int offset) {
+		if (bytes != null)
+			for (int s = 0, i = column; s < numRows; s++, i += numColumns)
+				values[offset + s] = bytes[i] & MAX_BYTE_CODE;
+		else if (shorts != null)
+			for (int s = 0, i = column; s < numRows; s++, i += numColumns)
+				values[offset + s] = shorts[i] & MAX_SHORT_CODE;
+		else
+			for (int s = 0, i = column; s < numRows; s++, i += numColumns)
+				values[offset + s] = ints[i];
+	}
+
+	/**
+	 * Appends a row, widening the storage if some of its codes don't fit.
+	 */
+	public void addRow(int[] values) {
+
+		int maxCode = 0;
+		for (int value : values)
+			// negative codes only fit in an int
+			maxCode = value < 0 ? Integer.MAX_VALUE : Math.max(maxCode, value);
+		if (bytes != null && maxCode > MAX_BYTE_CODE || shorts != null && maxCode > MAX_SHORT_CODE)
+			widen(maxCode);
+		ensureCapacity(numRows + 1);
+
+		int i = numRows * numColumns;
+		if (bytes != null)
+			for (int j = 0; j < numColumns; j++)
+				bytes[i + j] = (byte) values[j];
+		else if (shorts != null)
+			for (int j = 0; j < numColumns; j++)
+				shorts[i + j] = (short) values[j];
+		else
+			System.arraycopy(values, 0, ints, i, numColumns);
+		numRows++;
+	}
+
+	/**
+	 * Releases the capacity that is not taken by rows.
+	 */
+	public void trim() {
+		int length = numRows * numColumns;
+		if (bytes != null)
+			bytes = Arrays.copyOf(bytes, length);
+		else if (shorts != null)
+			shorts = Arrays.copyOf(shorts, length);
+		else
+			ints = Arrays.copyOf(ints, length);
+	}
+
+	private int capacity() {
+		int length = bytes != null ? bytes.length : (shorts != null ? shorts.length : ints.length);
+		return numColumns > 0 ? length / numColumns : Integer.MAX_VALUE;
+	}
+
+	private void ensureCapacity(int minRows) {
+		int capacity = capacity();
+		if (minRows <= capacity)
+			return;
+		long newLength = (long) Math.max(minRows, 2L * capacity) * numColumns;
+		if (newLength > Integer.MAX_VALUE)
+			newLength = (long) minRows * numColumns;
+		if (bytes != null)
+			bytes = Arrays.copyOf(bytes, (int) newLength);
+		else if (shorts != null)
+			shorts = Arrays.copyOf(shorts, (int) newLength);
+		else
+			ints = Arrays.copyOf(ints, (int) newLength);
+	}
+
+	/**
+	 * Moves all codes to the narrowest type that holds maxCode.
+	 */
+	private void widen(int maxCode) {
+		int length = bytes != null ? bytes.length : shorts.length;
+		int count = numRows * numColumns;
+		if (maxCode <= MAX_SHORT_CODE) {
+			shorts = new short[length];
+			for (int i = 0; i < count; i++)
+				shorts[i] = (short) (bytes[i] & MAX_BYTE_CODE);
+		} else {
+			ints = new int[length];
+			for (int i = 0; i < count; i++)
+				ints[i] = get(i / numColumns, i % numColumns);
+			shorts = null;
+		}
+		bytes = null;
+	}
+
+}
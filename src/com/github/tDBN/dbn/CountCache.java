@@ -0,0 +1,160 @@
+package com.github.tDBN.dbn;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Memoizes, for sets of parent columns, the index of the parents'
+ * configuration of each observation. Count tables of any child given those
+ * parents are then obtained with a single pass over the memoized indices and
+ * the child column. The indices for the union of a set S and a column j are
+ * derived from the ones of S and column j, so parent sets that share a
+ * prefix share work across scoring passes.
+ * <p>
+ * Entries are evicted in least recently used order when their total size
+ * exceeds a memory budget.
+ * 
+ * @see Observations#countTable(LocalConfiguration, int)
+ * 
+ * @author zlm
+ * 
+ */
+public class CountCache {
+
+	/**
+	 * Approximate memory taken by an entry besides its indices, in bytes.
+	 */
+	private static final long ENTRY_OVERHEAD = 128;
+
+	/**
+	 * Observations in column-major order, as indexed by the configuration.
+	 */
+	private int[][] observationColumns;
+
+	/**
+	 * Number of values of the attribute in each column.
+	 */
+	private int[] columnRanges;
+
+	private int numObservations;
+
+	/**
+	 * Maximum memory taken by all entries, in bytes.
+	 */
+	private long budget;
+
+	private long size = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * Configuration indices of the observations, indexed by the list of parent
+	 * columns. Iteration order is from least to most recently used.
+	 */
+	private LinkedHashMap<List<Integer>, int[]> configurations = new LinkedHashMap<List<Integer>, int[]>(16, 0.75f,
+			true);
+
+	/**
+	 * Configuration indices of the observations when there are no parents.
+	 */
+	private int[] noConfigurations;
+
+	public CountCache(int[][] observationColumns, int[] columnRanges, int numObservations, long budget) {
+		this.observationColumns = observationColumns;
+		this.columnRanges = columnRanges;
+		this.numObservations = numObservations;
+		this.budget = budget;
+		this.noConfigurations = new int[numObservations];
+	}
+
+	/**
+	 * Returns the index of the parents' configuration of each observation.
+	 * Indices follow the order of LocalConfiguration#nextParents(), where the
+	 * first parent changes fastest.
+	 * 
+	 * @param parentIndices
+	 *            columns of the parents
+	 * @return configuration indices, or null if the number of configurations
+	 *         exceeds the range of int
+	 */
+	public int[] getConfigurations(int[] parentIndices) {
+		return getConfigurations(parentIndices, parentIndices.length);
+	}
+
+	private int[] getConfigurations(int[] parentIndices, int numParents) {
+
+		if (numParents == 0)
+			return noConfigurations;
+
+		List<Integer> key = new ArrayList<Integer>(numParents);
+		for (int i = 0; i < numParents; i++)
+			key.add(parentIndices[i]);
+
+		int[] result = configurations.get(key);
+		if (result != null) {
+			hits++;
+			return result;
+		}
+		misses++;
+
+		// configurations of all parents except the last one
+		int[] previous = getConfigurations(parentIndices, numParents - 1);
+		if (previous == null)
+			return null;
+
+		long previousRange = 1;
+		for (int i = 0; i < numParents - 1; i++)
+			previousRange *= columnRanges[parentIndices[i]];
+		if (previousRange * columnRanges[parentIndices[numParents - 1]] > Integer.MAX_VALUE)
+			return null;
+
+		int[] column = observationColumns[parentIndices[numParents - 1]];
+		int multiplier = (int) previousRange;
+		result = new int[numObservations];
+		CountingKernels.get().addScaled(previous, column, multiplier, result, 0, numObservations);
+
+		put(key, result);
+		return result;
+	}
+
+	private void put(List<Integer> key, int[] value) {
+
+		long entrySize = 4L * value.length + ENTRY_OVERHEAD;
+		if (entrySize > budget)
+			return;
+
+		configurations.put(key, value);
+		size += entrySize;
+
+		// evict least recently used entries
+		Iterator<int[]> iter = configurations.values().iterator();
+		while (size > budget && iter.hasNext()) {
+			size -= 4L * iter.next().length + ENTRY_OVERHEAD;
+			iter.remove();
+		}
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups > 0 ? 1.0 * hits / lookups : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Count cache: " + hits + " hits, " + misses + " misses, hit rate " + getHitRate() + ", "
+				+ configurations.size() + " entries, " + size + " bytes";
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Inner loops of counting over observations in column-major order. Columns
+ * are indexed by position in the configuration, as in
+ * LocalConfiguration#countMatches(int[][], int), and rows are processed in
+ * the range [from, to[.
+ * 
+ * @see CountingKernels
+ * 
+ * @author zlm
+ * 
+ */
+public interface CountingKernel {
+
+	/**
+	 * Counts the rows where column indices[i] has value values[i], for every
+	 * i, and, if childIndex is not negative, column childIndex has value
+	 * childValue.
+	 */
+	public int countMatches(int[][] columns, int[] indices, int[] values, int childIndex, int childValue, int from,
+			int to);
+
+	/**
+	 * Counts, for each value of childColumn, the rows where column indices[i]
+	 * has value values[i], for every i. Counts are added to childCounts, which
+	 * is indexed by child value.
+	 */
+	public void countChildValues(int[][] columns, int[] indices, int[] values, int[] childColumn, int from, int to,
+			int[] childCounts);
+
+	/**
+	 * Sets result[s] to configurations[s] + column[s] * multiplier. result may
+	 * be the same array as configurations.
+	 */
+	public void addScaled(int[] configurations, int[] column, int multiplier, int[] result, int from, int to);
+
+	/**
+	 * Returns a short name that identifies the implementation.
+	 */
+	public String getName();
+
+}
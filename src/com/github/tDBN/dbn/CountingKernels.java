@@ -0,0 +1,63 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Selects the counting kernel at runtime. The vector kernel is compiled
+ * separately, from src-vector, against the incubating Vector API of JDK 17,
+ * and is loaded reflectively. When its class is not on the classpath, or the
+ * JVM was not started with --add-modules jdk.incubator.vector, the scalar
+ * kernel is used instead, so the default build does not depend on it.
+ * <p>
+ * Setting the system property tDBN.kernel to "scalar" disables the vector
+ * kernel.
+ * 
+ * @author zlm
+ * 
+ */
+public final class CountingKernels {
+
+	public static final String VECTOR_KERNEL_CLASS = "com.github.tDBN.dbn.VectorCountingKernel";
+
+	private static final CountingKernel SCALAR = new ScalarCountingKernel();
+
+	private static final CountingKernel VECTOR = loadVector();
+
+	private static final CountingKernel DEFAULT = "scalar".equals(System.getProperty("tDBN.kernel")) ? SCALAR
+			: (VECTOR != null ? VECTOR : SCALAR);
+
+	private CountingKernels() {
+	}
+
+	/**
+	 * Returns the kernel used for counting.
+	 */
+	public static CountingKernel get() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the scalar kernel.
+	 */
+	public static CountingKernel scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * Returns the vector kernel, or null if it is not available.
+	 */
+	public static CountingKernel vector() {
+		return VECTOR;
+	}
+
+	private static CountingKernel loadVector() {
+		try {
+			return (CountingKernel) Class.forName(VECTOR_KERNEL_CLASS).newInstance();
+		} catch (Exception e) {
+			// not on the classpath
+			return null;
+		} catch (LinkageError e) {
+			// class compiled for a newer JVM, or Vector API module not added
+			return null;
+		}
+	}
+
+}
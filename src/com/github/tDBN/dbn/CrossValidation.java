@@ -266,8 +266,8 @@ public class CrossValidation {
 			Observations forecast = evaluateFold(train, test, numParents, s, false, null, mostProbable);
 
 			// output.append("---Fold-" + fold + "---" + ls);
+			int[][][] fMatrix = forecast.getObservationsMatrix();
 			for (i = 0; i < testSize; i++) {
-				int[][][] fMatrix = forecast.getObservationsMatrix();
 				for (int predictor : forecastAttributes)
 					output.append(o.getAttributes().get(predictor).get(fMatrix[0][i][m * n + predictor]) + "\t");
 
@@ -0,0 +1,271 @@
+package com.github.tDBN.dbn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Score of a family that is a sum of terms of each parents' configuration,
+ * computed from its counts N_ijk, minus a penalty. Counting is shared by all
+ * such scores, which only differ in how they score a count table.
+ * 
+ * @author zlm
+ * 
+ */
+public abstract class DecomposableScoringFunction implements ScoringFunction {
+
+	@Override
+	public double evaluate(Observations observations, int transition, List<Integer> parentNodesPast, int childNode) {
+		return evaluate(observations, transition, parentNodesPast, null, childNode);
+	}
+
+	@Override
+	public double evaluate(Observations observations, int transition, List<Integer> parentNodesPast,
+			Integer parentNodePresent, int childNode) {
+		return evaluate(observations, transition, LocalConfiguration.toArray(parentNodesPast),
+				toNode(parentNodePresent), childNode);
+	}
+
+	@Override
+	public double evaluate(Observations observations, int transition, int[] parentNodesPast, int parentNodePresent,
+			int childNode) {
+
+		LocalConfiguration c = new LocalConfiguration(observations.getAttributes(), observations.getMarkovLag(),
+				parentNodesPast, parentNodePresent, childNode);
+
+		// all N_ijk in one pass, if count tables are enabled
+		int[] table = observations.countTable(c, transition);
+		double score;
+		if (table != null)
+			score = addScore(0, table, c, observations);
+		else
+			score = evaluate(observations, transition, c, new int[c.getChildRange()]);
+
+		// regularizer term
+		score -= penalty(observations, transition, c);
+
+		return score;
+	}
+
+	/**
+	 * Returns the regularizer term subtracted from the score of a
+	 * configuration, which is zero here. Subclasses override it to penalize
+	 * the score with the configuration already built for counting.
+	 */
+	protected double penalty(Observations observations, int transition, LocalConfiguration c) {
+		return 0;
+	}
+
+	/**
+	 * Calculates the score of a configuration one parents' configuration at a
+	 * time.
+	 * 
+	 * @param Nijk
+	 *            scratch array of size at least equal to the child range
+	 */
+	private double evaluate(Observations observations, int transition, LocalConfiguration c, int[] Nijk) {
+
+		double score = 0;
+
+		do {
+			// all N_ijk of the parents' configuration in one pass
+			observations.countChildValues(c, transition, Nijk);
+			score = addScore(score, Nijk, c, observations);
+		} while (c.nextParents());
+
+		return score;
+	}
+
+	/**
+	 * Adds the terms of a count table to a score.
+	 * 
+	 * @param Nijk
+	 *            count table of some parents' configurations of c, where
+	 *            entry j * childRange + k is N_ijk
+	 */
+	protected abstract double addScore(double score, int[] Nijk, LocalConfiguration c, Observations observations);
+
+	/**
+	 * Adds the log-likelihood terms of a count table to a score. Logarithms
+	 * are looked up in a table.
+	 * 
+	 * @param Nijk
+	 *            count table, where entry j * childRange + k is N_ijk
+	 */
+	protected static double addLogLikelihood(double score, int[] Nijk, int childRange, LogTable logTable) {
+		for (int j = 0; j < Nijk.length; j += childRange) {
+			int Nij = 0;
+			for (int k = 0; k < childRange; k++)
+				Nij += Nijk[j + k];
+			for (int k = 0; k < childRange; k++) {
+				if (Nijk[j + k] != 0 && Nijk[j + k] != Nij) {
+					score += Nijk[j + k] * (logTable.log(Nijk[j + k]) - logTable.log(Nij));
+				}
+			}
+		}
+		return score;
+	}
+
+	@Override
+	public double[] evaluateTransitions(Observations observations, List<Integer> parentNodesPast,
+			Integer parentNodePresent, int childNode) {
+		return evaluateTransitions(observations, LocalConfiguration.toArray(parentNodesPast),
+				toNode(parentNodePresent), childNode);
+	}
+
+	@Override
+	public double[] evaluateTransitions(Observations observations, int[] parentNodesPast, int parentNodePresent,
+			int childNode) {
+
+		LocalConfiguration c = new LocalConfiguration(observations.getAttributes(), observations.getMarkovLag(),
+				parentNodesPast, parentNodePresent, childNode);
+
+		// all N_ijk of all transitions in one pass, if count tables are enabled
+		int[][] tables = observations.countTables(c);
+		double[] scores;
+		if (tables != null)
+			scores = addScores(tables, c, observations);
+		else
+			scores = evaluateTransitions(observations, c, new int[observations.numTransitions()][c.getChildRange()]);
+
+		// regularizer term
+		for (int t = 0; t < scores.length; t++)
+			scores[t] -= penalty(observations, t, c);
+
+		return scores;
+	}
+
+	/**
+	 * Calculates the score in every transition of a configuration one
+	 * parents' configuration at a time.
+	 * 
+	 * @param Nijk
+	 *            scratch array of size equal to the number of transitions,
+	 *            with arrays of size at least equal to the child range
+	 */
+	private double[] evaluateTransitions(Observations observations, LocalConfiguration c, int[][] Nijk) {
+
+		int numTransitions = observations.numTransitions();
+		double[] scores = new double[numTransitions];
+
+		do {
+			// all N_ijk of the parents' configuration in all transitions
+			observations.countChildValues(c, Nijk);
+			for (int t = 0; t < numTransitions; t++)
+				scores[t] = addScore(scores[t], Nijk[t], c, observations);
+		} while (c.nextParents());
+
+		return scores;
+	}
+
+	private double[] addScores(int[][] tables, LocalConfiguration c, Observations observations) {
+		double[] scores = new double[tables.length];
+		for (int t = 0; t < tables.length; t++)
+			scores[t] = addScore(0, tables[t], c, observations);
+		return scores;
+	}
+
+	/**
+	 * Builds the configuration of each parent set in a block.
+	 */
+	protected static List<LocalConfiguration> getConfigurations(Observations observations, int[][] parentSetsPast,
+			int parentNodePresent, int childNode) {
+		List<LocalConfiguration> block = new ArrayList<LocalConfiguration>(parentSetsPast.length);
+		for (int[] parentNodesPast : parentSetsPast)
+			block.add(new LocalConfiguration(observations.getAttributes(), observations.getMarkovLag(),
+					parentNodesPast, parentNodePresent, childNode));
+		return block;
+	}
+
+	/**
+	 * Converts a possibly null parent node to a node, or -1 if null.
+	 */
+	protected static int toNode(Integer parentNodePresent) {
+		return parentNodePresent != null ? parentNodePresent : -1;
+	}
+
+	/**
+	 * Converts a block of parent sets to arrays.
+	 */
+	protected static int[][] toArrays(List<List<Integer>> parentSetsPast) {
+		int[][] arrays = new int[parentSetsPast.size()][];
+		for (int b = 0; b < arrays.length; b++)
+			arrays[b] = LocalConfiguration.toArray(parentSetsPast.get(b));
+		return arrays;
+	}
+
+	@Override
+	public void evaluate(Observations observations, List<List<Integer>> parentSetsPast, Integer parentNodePresent,
+			int childNode, double[] scores) {
+		evaluate(observations, toArrays(parentSetsPast), toNode(parentNodePresent), childNode, scores);
+	}
+
+	@Override
+	public void evaluate(Observations observations, int[][] parentSetsPast, int parentNodePresent, int childNode,
+			double[] scores) {
+
+		List<LocalConfiguration> block = getConfigurations(observations, parentSetsPast, parentNodePresent,
+				childNode);
+		int childRange = observations.getAttributes().get(childNode).size();
+
+		// count tables of the block, sharing partitions of the observations
+		int[][] tables = observations.countTable(block, -1);
+		int[] Nijk = new int[childRange];
+
+		for (int b = 0; b < scores.length; b++) {
+			if (tables[b] != null)
+				scores[b] = addScore(0, tables[b], block.get(b), observations);
+			else
+				scores[b] = evaluate(observations, -1, block.get(b), Nijk);
+
+			// regularizer term
+			scores[b] -= penalty(observations, -1, block.get(b));
+		}
+	}
+
+	@Override
+	public void evaluateTransitions(Observations observations, List<List<Integer>> parentSetsPast,
+			Integer parentNodePresent, int childNode, double[][] scores) {
+		evaluateTransitions(observations, toArrays(parentSetsPast), toNode(parentNodePresent), childNode, scores);
+	}
+
+	@Override
+	public void evaluateTransitions(Observations observations, int[][] parentSetsPast, int parentNodePresent,
+			int childNode, double[][] scores) {
+
+		List<LocalConfiguration> block = getConfigurations(observations, parentSetsPast, parentNodePresent,
+				childNode);
+		int childRange = observations.getAttributes().get(childNode).size();
+
+		// count tables of the block, sharing partitions of the observations
+		int[][][] tables = observations.countTables(block);
+		int[][] Nijk = new int[observations.numTransitions()][childRange];
+
+		for (int b = 0; b < scores.length; b++) {
+			if (tables[b] != null)
+				scores[b] = addScores(tables[b], block.get(b), observations);
+			else
+				scores[b] = evaluateTransitions(observations, block.get(b), Nijk);
+
+			// regularizer term
+			for (int t = 0; t < scores[b].length; t++)
+				scores[b][t] -= penalty(observations, t, block.get(b));
+		}
+	}
+
+	@Override
+	public double evaluate(Observations observations, List<Integer> parentNodesPast, int childNode) {
+		return evaluate(observations, parentNodesPast, null, childNode);
+	}
+
+	@Override
+	public double evaluate(Observations observations, List<Integer> parentNodesPast, Integer parentNodePresent,
+			int childNode) {
+		return evaluate(observations, -1, parentNodesPast, parentNodePresent, childNode);
+	}
+
+	@Override
+	public double evaluate(Observations observations, int[] parentNodesPast, int parentNodePresent, int childNode) {
+		return evaluate(observations, -1, parentNodesPast, parentNodePresent, childNode);
+	}
+
+}
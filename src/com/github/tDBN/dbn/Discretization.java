@@ -0,0 +1,105 @@
+package com.github.tDBN.dbn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Specifies how numeric attributes are discretized when observations are
+ * read, bounding their number of values. Cut points are either supplied by
+ * the user for a given attribute or computed from the observed values, by
+ * equal-width or equal-frequency binning. Attributes with no more distinct
+ * values than the number of bins are left unchanged.
+ * 
+ * @see DiscretizedAttribute
+ * 
+ * @author zlm
+ * 
+ */
+public class Discretization {
+
+	/**
+	 * Maximum number of values of a numeric attribute. If not positive, only
+	 * attributes with user supplied cut points are discretized.
+	 */
+	private int numBins;
+
+	/**
+	 * If true, bins hold (approximately) the same number of observed values.
+	 * Otherwise, bins have the same width.
+	 */
+	private boolean equalFrequency;
+
+	/**
+	 * User supplied cut points, indexed by attribute name.
+	 */
+	private Map<String, float[]> cutPoints = new HashMap<String, float[]>();
+
+	public Discretization(int numBins, boolean equalFrequency) {
+		this.numBins = numBins;
+		this.equalFrequency = equalFrequency;
+	}
+
+	public Discretization setCutPoints(String attributeName, float[] cutPoints) {
+		float[] sortedCutPoints = cutPoints.clone();
+		Arrays.sort(sortedCutPoints);
+		this.cutPoints.put(attributeName, sortedCutPoints);
+		return this;
+	}
+
+	/**
+	 * Determines the cut points of a numeric attribute.
+	 * 
+	 * @param attributeName
+	 *            name of the attribute
+	 * @param values
+	 *            all observed values of the attribute
+	 * @return the sorted cut points, or null if the attribute is not to be
+	 *         discretized
+	 */
+	public float[] getCutPoints(String attributeName, float[] values) {
+
+		if (cutPoints.containsKey(attributeName))
+			return cutPoints.get(attributeName);
+
+		if (numBins <= 0 || values.length == 0)
+			return null;
+
+		float[] sortedValues = values.clone();
+		Arrays.sort(sortedValues);
+
+		int numDistinctValues = 1;
+		for (int i = 1; i < sortedValues.length; i++)
+			if (sortedValues[i] != sortedValues[i - 1])
+				numDistinctValues++;
+
+		if (numDistinctValues <= numBins)
+			return null;
+
+		return equalFrequency ? equalFrequencyCutPoints(sortedValues) : equalWidthCutPoints(sortedValues);
+	}
+
+	private float[] equalWidthCutPoints(float[] sortedValues) {
+		float min = sortedValues[0];
+		float max = sortedValues[sortedValues.length - 1];
+		float[] result = new float[numBins - 1];
+		for (int i = 1; i < numBins; i++)
+			result[i - 1] = min + i * (max - min) / numBins;
+		return result;
+	}
+
+	private float[] equalFrequencyCutPoints(float[] sortedValues) {
+		int N = sortedValues.length;
+		float max = sortedValues[N - 1];
+		float[] result = new float[numBins - 1];
+		int numCutPoints = 0;
+		for (int i = 1; i < numBins; i++) {
+			float cutPoint = sortedValues[(int) ((long) i * N / numBins) - 1];
+			// repeated values may produce repeated cut points, skip them
+			if (cutPoint < max && (numCutPoints == 0 || cutPoint > result[numCutPoints - 1]))
+				result[numCutPoints++] = cutPoint;
+		}
+		return Arrays.copyOf(result, numCutPoints);
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.github.tDBN.dbn;
+
+import java.util.Arrays;
+
+/**
+ * A numeric attribute whose values are grouped into a fixed number of bins,
+ * delimited by a sorted array of cut points. A value v belongs to bin i if
+ * cutPoints[i-1] < v <= cutPoints[i]. The cut points are kept so that bins can
+ * be decoded back into intervals.
+ * 
+ * @see Discretization
+ * 
+ * @author zlm
+ * 
+ */
+public class DiscretizedAttribute implements Attribute {
+
+	private String name;
+
+	private float[] cutPoints;
+
+	/**
+	 * @param cutPoints
+	 *            must be sorted in strictly increasing order
+	 */
+	public DiscretizedAttribute(float[] cutPoints) {
+		this.cutPoints = cutPoints;
+	}
+
+	@Override
+	public boolean isNumeric() {
+		return true;
+	}
+
+	@Override
+	public boolean isNominal() {
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return cutPoints.length + 1;
+	}
+
+	/**
+	 * All bins are known beforehand, so no value is ever added.
+	 * 
+	 * @return false
+	 */
+	@Override
+	public boolean add(String value) {
+		return false;
+	}
+
+	@Override
+	public int getIndex(String value) {
+		int index = Arrays.binarySearch(cutPoints, Float.parseFloat(value));
+		// a value equal to a cut point belongs to the lower bin
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * @return the interval of values represented by the bin
+	 */
+	@Override
+	public String get(int index) {
+		String lower = index > 0 ? Float.toString(cutPoints[index - 1]) : "-inf";
+		String upper = index < cutPoints.length ? Float.toString(cutPoints[index]) + "]" : "+inf)";
+		return "(" + lower + "," + upper;
+	}
+
+	public float[] getCutPoints() {
+		return cutPoints;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[");
+		for (int i = 0; i < size(); i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(get(i));
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+}
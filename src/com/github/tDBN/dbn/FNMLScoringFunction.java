@@ -0,0 +1,67 @@
+package com.github.tDBN.dbn;
+
+import java.util.List;
+
+/**
+ * Factorized normalized maximum likelihood (fNML) score, the log-likelihood
+ * of a family minus, for each parents' configuration j, the log-regret log
+ * C(r, N_ij) of the child's range r over the N_ij observations of j. It has
+ * no hyperparameter. Log-regrets are looked up in a table built once for all
+ * attribute ranges and counts of the observations, so scoring a count table
+ * costs the same as its MDL score.
+ * 
+ * @author zlm
+ * 
+ */
+public class FNMLScoringFunction extends DecomposableScoringFunction {
+
+	private RegretTable regretTable;
+
+	@Override
+	protected double addScore(double score, int[] Nijk, LocalConfiguration c, Observations observations) {
+
+		int childRange = c.getChildRange();
+		score = addLogLikelihood(score, Nijk, childRange, observations.getLogTable());
+
+		// regularizer term
+		double[] logRegrets = getLogRegrets(observations, childRange);
+		for (int j = 0; j < Nijk.length; j += childRange) {
+			int Nij = 0;
+			for (int k = 0; k < childRange; k++)
+				Nij += Nijk[j + k];
+			score -= logRegrets[Nij];
+		}
+		return score;
+	}
+
+	/**
+	 * Returns the log-regrets of a range, building the regret table of all
+	 * ranges of the observations if it doesn't cover them.
+	 */
+	private double[] getLogRegrets(Observations observations, int childRange) {
+
+		int maxCount = observations.numObservations(-1);
+		double[] logRegrets = regretTable != null ? regretTable.getLogRegrets(childRange) : null;
+		if (logRegrets != null && regretTable.getMaxCount() >= maxCount)
+			return logRegrets;
+
+		List<Attribute> attributes = observations.getAttributes();
+		int[] ranges = new int[attributes.size() + 1];
+		for (int i = 0; i < attributes.size(); i++)
+			ranges[i] = attributes.get(i).size();
+		ranges[attributes.size()] = childRange;
+		regretTable = new RegretTable(ranges, maxCount);
+
+		return regretTable.getLogRegrets(childRange);
+	}
+
+	public RegretTable getRegretTable() {
+		return regretTable;
+	}
+
+	@Override
+	public String toString() {
+		return "fNML";
+	}
+
+}
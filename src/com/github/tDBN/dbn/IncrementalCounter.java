@@ -0,0 +1,207 @@
+package com.github.tDBN.dbn;
+
+import java.util.Arrays;
+
+/**
+ * Builds count tables for a sequence of parent sets, updating the
+ * configuration of each observation incrementally from one set to the next.
+ * Past parents are kept in slots, and the configuration of an observation is
+ * the sum of its value in each slot times R^slot, where R is the largest
+ * attribute range. When the next set differs from the current one by a single
+ * parent, that parent's slot is updated in one pass over two columns, which
+ * makes revolving-door (Gray code) orderings of parent sets cheap to count.
+ * Parents in the present slice are added on the fly.
+ * <p>
+ * Count tables are returned in the same order as the ones built by
+ * Observations#countTable(LocalConfiguration, int).
+ * 
+ * @author zlm
+ * 
+ */
+public class IncrementalCounter {
+
+	/**
+	 * Observations in column-major order, as indexed by the configuration.
+	 */
+	private int[][] observationColumns;
+
+	/**
+	 * Number of values of the attribute in each column.
+	 */
+	private int[] columnRanges;
+
+	/**
+	 * Columns below this index refer to past slices.
+	 */
+	private int numPastColumns;
+
+	private int numObservations;
+
+	/**
+	 * Radix of the slots, the largest attribute range.
+	 */
+	private int radix;
+
+	/**
+	 * Column of the past parent in each slot.
+	 */
+	private int[] slotColumns = null;
+
+	/**
+	 * Configuration of each observation, according to the current slots.
+	 */
+	private int[] slotConfigurations;
+
+	public IncrementalCounter(int[][] observationColumns, int[] columnRanges, int numPastColumns,
+			int numObservations) {
+		this.observationColumns = observationColumns;
+		this.columnRanges = columnRanges;
+		this.numPastColumns = numPastColumns;
+		this.numObservations = numObservations;
+		this.slotConfigurations = new int[numObservations];
+		this.radix = 1;
+		for (int range : columnRanges)
+			radix = Math.max(radix, range);
+	}
+
+	/**
+	 * Counts the observations in each range [bounds[t], bounds[t+1][ for every
+	 * parents' configuration and child value.
+	 * 
+	 * @param parentIndices
+	 *            columns of the parents, as in LocalConfiguration
+	 * @param maxTableSize
+	 *            largest count table that can be built
+	 * @return the count table of each range, where entry j * childRange + k
+	 *         is N_ijk for the j-th parents' configuration, or null if the
+	 *         table in slot order would exceed maxTableSize
+	 */
+	public int[][] countTables(int[] parentIndices, int childIndex, int[] bounds, int maxTableSize) {
+
+		int numParents = parentIndices.length;
+		int numPast = 0;
+		while (numPast < numParents && parentIndices[numPast] < numPastColumns)
+			numPast++;
+
+		int childRange = columnRanges[childIndex];
+		long slotTableSize = childRange;
+		for (int i = 0; i < numParents; i++)
+			slotTableSize *= radix;
+		if (slotTableSize > maxTableSize)
+			return null;
+
+		update(Arrays.copyOf(parentIndices, numPast));
+
+		// multiplier of each parent in slot order
+		int[] multipliers = new int[numParents];
+		for (int i = 0; i < numParents; i++) {
+			int slot = i < numPast ? slotOf(parentIndices[i]) : i;
+			int multiplier = 1;
+			for (int l = 0; l < slot; l++)
+				multiplier *= radix;
+			multipliers[i] = multiplier;
+		}
+
+		int[] childColumn = observationColumns[childIndex];
+		int numPresent = numParents - numPast;
+		int[][] presentColumns = new int[numPresent][];
+		int[] presentMultipliers = Arrays.copyOfRange(multipliers, numPast, numParents);
+		for (int i = 0; i < numPresent; i++)
+			presentColumns[i] = observationColumns[parentIndices[numPast + i]];
+
+		int parentsRange = 1;
+		for (int i = 0; i < numParents; i++)
+			parentsRange *= columnRanges[parentIndices[i]];
+
+		int numTables = bounds.length - 1;
+		int[][] tables = new int[numTables][];
+		int[] slotTable = new int[(int) slotTableSize];
+
+		for (int t = 0; t < numTables; t++) {
+			Arrays.fill(slotTable, 0);
+			for (int s = bounds[t]; s < bounds[t + 1]; s++) {
+				int configuration = slotConfigurations[s];
+				for (int i = 0; i < numPresent; i++)
+					configuration += presentColumns[i][s] * presentMultipliers[i];
+				slotTable[configuration * childRange + childColumn[s]]++;
+			}
+
+			// rearrange in the order of LocalConfiguration#nextParents()
+			int[] table = new int[parentsRange * childRange];
+			int[] values = new int[numParents];
+			int configuration = 0;
+			for (int j = 0; j < parentsRange; j++) {
+				System.arraycopy(slotTable, configuration * childRange, table, j * childRange, childRange);
+				for (int i = 0; i < numParents; i++) {
+					if (++values[i] < columnRanges[parentIndices[i]]) {
+						configuration += multipliers[i];
+						break;
+					}
+					configuration -= (values[i] - 1) * multipliers[i];
+					values[i] = 0;
+				}
+			}
+			tables[t] = table;
+		}
+
+		return tables;
+	}
+
+	/**
+	 * Updates the slots so that they hold some set of past parents. If a
+	 * single parent differs from the current slots, only its slot is updated.
+	 * Otherwise, configurations are rebuilt.
+	 */
+	private void update(int[] pastParents) {
+
+		if (slotColumns != null && slotColumns.length == pastParents.length) {
+			int slotOut = -1;
+			int columnIn = -1;
+			int numDifferent = 0;
+			for (int slot = 0; slot < slotColumns.length; slot++)
+				if (indexOf(pastParents, slotColumns[slot]) < 0) {
+					slotOut = slot;
+					numDifferent++;
+				}
+			for (int column : pastParents)
+				if (indexOf(slotColumns, column) < 0)
+					columnIn = column;
+
+			if (numDifferent == 0)
+				return;
+
+			if (numDifferent == 1) {
+				int multiplier = 1;
+				for (int l = 0; l < slotOut; l++)
+					multiplier *= radix;
+				int[] out = observationColumns[slotColumns[slotOut]];
+				int[] in = observationColumns[columnIn];
+				for (int s = 0; s < numObservations; s++)
+					slotConfigurations[s] += (in[s] - out[s]) * multiplier;
+				slotColumns[slotOut] = columnIn;
+				return;
+			}
+		}
+
+		slotColumns = pastParents.clone();
+		Arrays.fill(slotConfigurations, 0);
+		int multiplier = 1;
+		for (int slot = 0; slot < slotColumns.length; slot++) {
+			CountingKernels.get().addScaled(slotConfigurations, observationColumns[slotColumns[slot]], multiplier,
+					slotConfigurations, 0, numObservations);
+			multiplier *= radix;
+		}
+	}
+
+	private int slotOf(int column) {
+		return indexOf(slotColumns, column);
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++)
+			if (array[i] == value)
+				return i;
+		return -1;
+	}
+
+}
@@ -1,13 +1,26 @@
 package com.github.tDBN.dbn;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class LocalConfiguration extends Configuration {
 
+	private static final CountingKernel KERNEL = CountingKernels.get();
+
 	private int[] parentIndices;
 
+	/**
+	 * Current value of each parent, parentValues[i] being the value of the
+	 * parent in configuration[parentIndices[i]]. Along with parentIndices,
+	 * allows matching observations by only inspecting the set positions.
+	 */
+	private int[] parentValues;
+
+	/**
+	 * Position of the child in the configuration array.
+	 */
+	private int childIndex;
+
 	/**
 	 * If true, considers the child value when matching an observation with the
 	 * current configuration. In this case, N_{ijk} is what is being counted.
@@ -28,44 +41,77 @@ public class LocalConfiguration extends Configuration {
 	 * @param childNode
 	 *            child node in t+1
 	 */
-	public LocalConfiguration(List<Attribute> attributes, int markovLag, List<Integer> parentNodesPast,
-			List<Integer> parentNodesPresent, int childNode) {
+	public LocalConfiguration(List<Attribute> attributes, int markovLag, int[] parentNodesPast,
+			int[] parentNodesPresent, int childNode) {
 		super(attributes, markovLag);
 		this.reset();
 
 		int n = attributes.size();
-		int numParentsPast = (parentNodesPast != null) ? parentNodesPast.size() : 0;
-		int numParentsPresent = (parentNodesPresent != null) ? parentNodesPresent.size() : 0;
+		int numParentsPast = (parentNodesPast != null) ? parentNodesPast.length : 0;
+		int numParentsPresent = (parentNodesPresent != null) ? parentNodesPresent.length : 0;
 		int numParents = numParentsPast + numParentsPresent;
 
 		parentIndices = new int[numParents];
+		parentValues = new int[numParents];
 		int i = 0;
 
 		if (parentNodesPast != null)
 			// parentNodesPast ints are already shifted
-			for (Integer parentNode : parentNodesPast)
+			for (int parentNode : parentNodesPast)
 				parentIndices[i++] = parentNode;
 
 		if (parentNodesPresent != null)
-			for (Integer parentNode : parentNodesPresent)
+			for (int parentNode : parentNodesPresent)
 				parentIndices[i++] = parentNode + markovLag * n;
 
 		resetParents();
 
 		this.childNode = childNode;
+		this.childIndex = n * markovLag + childNode;
 		resetChild();
 	}
 
+	/**
+	 * Allocates the configuration array, as
+	 * {@link #LocalConfiguration(List, int, int[], int[], int)}, for at most
+	 * one parent node in t+1.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in t+1, or -1 if there is none
+	 */
+	public LocalConfiguration(List<Attribute> attributes, int markovLag, int[] parentNodesPast,
+			int parentNodePresent, int childNode) {
+		this(attributes, markovLag, parentNodesPast, (parentNodePresent >= 0 ? new int[] { parentNodePresent }
+				: null), childNode);
+	}
+
+	public LocalConfiguration(List<Attribute> attributes, int markovLag, List<Integer> parentNodesPast,
+			List<Integer> parentNodesPresent, int childNode) {
+		this(attributes, markovLag, toArray(parentNodesPast), toArray(parentNodesPresent), childNode);
+	}
+
 	public LocalConfiguration(List<Attribute> attributes, int markovLag, List<Integer> parentNodesPast,
 			Integer parentNodePresent, int childNode) {
-		this(attributes, markovLag, parentNodesPast, (parentNodePresent != null ? Arrays.asList(parentNodePresent)
-				: null), childNode);
+		this(attributes, markovLag, toArray(parentNodesPast), (parentNodePresent != null ? parentNodePresent : -1),
+				childNode);
 	}
 
 	public LocalConfiguration(List<Attribute> attributes, int markovLag, List<Integer> parentNodes, int childNode) {
 		this(attributes, markovLag, parentNodes, (List<Integer>) null, childNode);
 	}
 
+	/**
+	 * Converts a list of nodes to an array, keeping null as null.
+	 */
+	public static int[] toArray(List<Integer> nodes) {
+		if (nodes == null)
+			return null;
+		int[] array = new int[nodes.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = nodes.get(i);
+		return array;
+	}
+
 	/**
 	 * Sets whether the child value should be considered when matching an
 	 * observation with the current configuration.
@@ -76,20 +122,172 @@ public class LocalConfiguration extends Configuration {
 		considerChild = state;
 	}
 
+	/**
+	 * Checks if an observation has the current parents' values and, if it is
+	 * being considered, the current child value. Only the positions of the
+	 * parents and the child are inspected.
+	 */
 	public boolean matches(int[] observation) {
 
-		int n = attributes.size();
+		for (int i = 0; i < parentIndices.length; i++) {
+			if (observation[parentIndices[i]] != parentValues[i]) {
+				return false;
+			}
+		}
+		return !considerChild || observation[childIndex] == configuration[childIndex];
+	}
+
+	/**
+	 * Counts the observations that have the current parents' values and, if
+	 * it is being considered, the current child value. Observations are given
+	 * in column-major order, so only the columns of the parents and the child
+	 * are read.
+	 * 
+	 * @param observationColumns
+	 *            observationColumns[j][s] is the value in position j of the
+	 *            configuration for observation s
+	 * @param numObservations
+	 *            number of observations in each column
+	 */
+	public int countMatches(int[][] observationColumns, int numObservations) {
+		return KERNEL.countMatches(observationColumns, parentIndices, parentValues, considerChild ? childIndex : -1,
+				configuration[childIndex], 0, numObservations);
+	}
+
+	/**
+	 * Counts, for each child value, the observations that have the current
+	 * parents' values, in a single pass over the observations. Counts are
+	 * added to childCounts, which is indexed by child value.
+	 * 
+	 * @see #countMatches(int[][], int)
+	 */
+	public void countChildValues(int[][] observationColumns, int numObservations, int[] childCounts) {
+		countChildValues(observationColumns, 0, numObservations, childCounts);
+	}
 
-		for (int i = 0; i < configuration.length; i++) {
-			if (configuration[i] > -1) {
-				if (observation[i] != configuration[i]) {
-					if (considerChild || i != childNode + n * markovLag) {
-						return false;
-					}
+	/**
+	 * Counts, for each child value, the observations in the range [from, to[
+	 * that have the current parents' values. Counts are added to childCounts,
+	 * which is indexed by child value.
+	 */
+	public void countChildValues(int[][] observationColumns, int from, int to, int[] childCounts) {
+		KERNEL.countChildValues(observationColumns, parentIndices, parentValues, observationColumns[childIndex], from,
+				to, childCounts);
+	}
+
+	/**
+	 * Checks if all the columns that are needed for matching observations
+	 * with the current configuration have bit planes.
+	 * 
+	 * @see #countMatches(long[][][], int)
+	 */
+	public boolean hasBitPlanes(long[][][] columnBitPlanes) {
+		return hasBitPlanes(columnBitPlanes, considerChild);
+	}
+
+	/**
+	 * Checks if the columns of all parents and, if includeChild is set, of the
+	 * child have bit planes.
+	 */
+	public boolean hasBitPlanes(long[][][] columnBitPlanes, boolean includeChild) {
+		for (int i = 0; i < parentIndices.length; i++) {
+			if (columnBitPlanes[parentIndices[i]] == null) {
+				return false;
+			}
+		}
+		return !includeChild || columnBitPlanes[childIndex] != null;
+	}
+
+	/**
+	 * Counts the observations that have the current parents' values and, if
+	 * it is being considered, the current child value. Observations are given
+	 * as bit planes, with blocks of 64 observations in each long, so that
+	 * matching is done 64 observations at a time.
+	 * 
+	 * @param columnBitPlanes
+	 *            bit k of columnBitPlanes[j][k][b] is the k-th bit of the value
+	 *            in position j of the configuration, for each observation of
+	 *            block b
+	 * @param numObservations
+	 *            number of observations in each column
+	 */
+	public int countMatches(long[][][] columnBitPlanes, int numObservations) {
+
+		int childValue = configuration[childIndex];
+		long[][] childBitPlanes = columnBitPlanes[childIndex];
+		int numBlocks = (numObservations + 63) / 64;
+		int matches = 0;
+
+		for (int b = 0; b < numBlocks; b++) {
+			// the last block may be incomplete
+			long mask = (b < numBlocks - 1 || numObservations % 64 == 0) ? -1L : (1L << (numObservations % 64)) - 1;
+			for (int i = 0; i < parentIndices.length && mask != 0; i++) {
+				mask &= matchBitPlanes(columnBitPlanes[parentIndices[i]], parentValues[i], b);
+			}
+			if (considerChild) {
+				mask &= matchBitPlanes(childBitPlanes, childValue, b);
+			}
+			matches += Long.bitCount(mask);
+		}
+		return matches;
+	}
+
+	/**
+	 * Counts, for each child value, the observations that have the current
+	 * parents' values, in a single pass over the bit planes. Counts are added
+	 * to childCounts, which is indexed by child value.
+	 * 
+	 * @see #countMatches(long[][][], int)
+	 */
+	public void countChildValues(long[][][] columnBitPlanes, int numObservations, int[] childCounts) {
+		countChildValues(columnBitPlanes, 0, numObservations, childCounts);
+	}
+
+	/**
+	 * Counts, for each child value, the observations in the range [from, to[
+	 * that have the current parents' values. Counts are added to childCounts,
+	 * which is indexed by child value.
+	 */
+	public void countChildValues(long[][][] columnBitPlanes, int from, int to, int[] childCounts) {
+
+		if (from >= to) {
+			return;
+		}
+
+		long[][] childBitPlanes = columnBitPlanes[childIndex];
+		int childRange = getChildRange();
+		int firstBlock = from / 64;
+		int lastBlock = (to - 1) / 64;
+
+		for (int b = firstBlock; b <= lastBlock; b++) {
+			// the first and last blocks may be incomplete
+			long mask = -1L;
+			if (b == firstBlock) {
+				mask &= -1L << (from % 64);
+			}
+			if (b == lastBlock && to % 64 != 0) {
+				mask &= (1L << (to % 64)) - 1;
+			}
+			for (int i = 0; i < parentIndices.length && mask != 0; i++) {
+				mask &= matchBitPlanes(columnBitPlanes[parentIndices[i]], parentValues[i], b);
+			}
+			if (mask != 0) {
+				for (int k = 0; k < childRange; k++) {
+					childCounts[k] += Long.bitCount(mask & matchBitPlanes(childBitPlanes, k, b));
 				}
 			}
 		}
-		return true;
+	}
+
+	/**
+	 * @return a mask of the observations in a block that have some value
+	 */
+	private static long matchBitPlanes(long[][] bitPlanes, int value, int block) {
+		long mask = -1L;
+		for (int k = 0; k < bitPlanes.length; k++) {
+			mask &= ((value >> k) & 1) != 0 ? bitPlanes[k][block] : ~bitPlanes[k][block];
+		}
+		return mask;
 	}
 
 	/**
@@ -104,9 +302,11 @@ public class LocalConfiguration extends Configuration {
 		int n = attributes.size();
 
 		for (int i = 0; i < parentIndices.length; i++) {
-			if (++configuration[parentIndices[i]] < attributes.get(parentIndices[i] % n).size()) {
+			if (++parentValues[i] < attributes.get(parentIndices[i] % n).size()) {
+				configuration[parentIndices[i]] = parentValues[i];
 				break;
 			} else {
+				parentValues[i] = 0;
 				configuration[parentIndices[i]] = 0;
 				if (i == parentIndices.length - 1) {
 					resetParents();
@@ -122,6 +322,7 @@ public class LocalConfiguration extends Configuration {
 	 */
 	public void resetParents() {
 		for (int i = 0; i < parentIndices.length; i++) {
+			parentValues[i] = 0;
 			configuration[parentIndices[i]] = 0;
 		}
 	}
@@ -135,9 +336,7 @@ public class LocalConfiguration extends Configuration {
 	 */
 	public boolean nextChild() {
 
-		int n = attributes.size();
-
-		if (++configuration[n * markovLag + childNode] < attributes.get(childNode).size()) {
+		if (++configuration[childIndex] < attributes.get(childNode).size()) {
 			return true;
 		} else {
 			resetChild();
@@ -150,8 +349,21 @@ public class LocalConfiguration extends Configuration {
 	 * Sets the child node to its first value.
 	 */
 	public void resetChild() {
-		int n = attributes.size();
-		configuration[n * markovLag + childNode] = 0;
+		configuration[childIndex] = 0;
+	}
+
+	/**
+	 * @return the positions of the parents in the configuration array
+	 */
+	public int[] getParentIndices() {
+		return parentIndices;
+	}
+
+	/**
+	 * @return the position of the child in the configuration array
+	 */
+	public int getChildIndex() {
+		return childIndex;
 	}
 
 	public int getParentsRange() {
@@ -166,6 +378,28 @@ public class LocalConfiguration extends Configuration {
 		return result;
 	}
 
+	/**
+	 * Calculates the number of parents' configurations, as
+	 * {@link #getParentsRange()} does, but saturating at Long.MAX_VALUE
+	 * instead of overflowing for parents with many values.
+	 * 
+	 * @return the number of parents' configurations
+	 */
+	public long getNumParentConfigurations() {
+		if (parentIndices.length == 0) {
+			return 0;
+		}
+		int n = attributes.size();
+		long result = 1;
+		for (int i = 0; i < parentIndices.length; i++) {
+			int size = attributes.get(parentIndices[i] % n).size();
+			if (result > Long.MAX_VALUE / size)
+				return Long.MAX_VALUE;
+			result *= size;
+		}
+		return result;
+	}
+
 	public int getChildRange() {
 		return attributes.get(childNode).size();
 	}
@@ -176,8 +410,12 @@ public class LocalConfiguration extends Configuration {
 	 * 
 	 * @return the number of parameters to specify
 	 */
-	public int getNumParameters() {
-		return getParentsRange() * (getChildRange() - 1);
+	public long getNumParameters() {
+		long parentsRange = getNumParentConfigurations();
+		int childRange = getChildRange();
+		if (childRange > 1 && parentsRange > Long.MAX_VALUE / (childRange - 1))
+			return Long.MAX_VALUE;
+		return parentsRange * (childRange - 1);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,57 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Tabulates lgamma(alpha+x) - lgamma(alpha) for counts x, for some fixed
+ * alpha > 0, so that Bayesian Dirichlet scores don't need to compute
+ * log-gamma functions of counts. By the recurrence gamma(a+1) = a*gamma(a),
+ * the difference is the sum of log(alpha+m) for m in [0, x[, so each entry
+ * costs a single logarithm. The table grows on demand up to the largest
+ * count looked up.
+ * 
+ * @see LogTable
+ * 
+ * @author zlm
+ * 
+ */
+public class LogGammaTable {
+
+	private double alpha;
+
+	private double[] logGammaRatios;
+
+	/**
+	 * Number of entries of logGammaRatios computed so far.
+	 */
+	private int size;
+
+	public LogGammaTable(double alpha) {
+		this.alpha = alpha;
+		logGammaRatios = new double[16];
+		logGammaRatios[0] = 0;
+		size = 1;
+	}
+
+	/**
+	 * @return lgamma(alpha+x) - lgamma(alpha), for x >= 0
+	 */
+	public double logGammaRatio(int x) {
+		if (x >= size)
+			grow(x);
+		return logGammaRatios[x];
+	}
+
+	private void grow(int x) {
+		if (x >= logGammaRatios.length) {
+			double[] grown = new double[Math.max(x + 1, 2 * logGammaRatios.length)];
+			System.arraycopy(logGammaRatios, 0, grown, 0, size);
+			logGammaRatios = grown;
+		}
+		for (; size <= x; size++)
+			logGammaRatios[size] = logGammaRatios[size - 1] + Math.log(alpha + size - 1);
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+}
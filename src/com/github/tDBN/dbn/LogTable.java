@@ -0,0 +1,47 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Tabulates log(x) and x*log(x) for all counts x up to some maximum, usually
+ * the number of observations in a dataset, so that scoring functions don't
+ * need to compute logarithms of counts.
+ * 
+ * @see Observations#getLogTable()
+ * 
+ * @author zlm
+ * 
+ */
+public class LogTable {
+
+	private double[] logs;
+
+	private double[] nLogNs;
+
+	public LogTable(int maxCount) {
+		logs = new double[maxCount + 1];
+		nLogNs = new double[maxCount + 1];
+		logs[0] = Double.NEGATIVE_INFINITY;
+		for (int x = 1; x <= maxCount; x++) {
+			logs[x] = Math.log(x);
+			nLogNs[x] = x * logs[x];
+		}
+	}
+
+	/**
+	 * @return log(x), for x in [0, maxCount]
+	 */
+	public double log(int x) {
+		return logs[x];
+	}
+
+	/**
+	 * @return x*log(x), for x in [0, maxCount], where 0*log(0) = 0
+	 */
+	public double nLogN(int x) {
+		return nLogNs[x];
+	}
+
+	public int getMaxCount() {
+		return logs.length - 1;
+	}
+
+}
@@ -5,6 +5,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -14,24 +16,93 @@ import java.util.Map;
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 
+import com.github.tDBN.utils.CSVColumnReader;
 import com.github.tDBN.utils.Utils;
 
 public class Observations {
 
 	/**
-	 * Three-dimensional matrix of coded observation data which will be used for
-	 * learning a dynamic Bayesian network.
+	 * Coded observation data which will be used for learning a dynamic
+	 * Bayesian network, stored in the narrowest type that holds all codes.
 	 * <ul>
-	 * <li>the 1st index refers to the transition {t - markovLag + 1, ...
+	 * <li>the array index refers to the transition {t - markovLag + 1, ...
 	 * ,t}->t+1;
-	 * <li>the 2nd index refers to the the subject (set of observed attributes);
-	 * <li>the 3rd index refers to the attribute and lies within the range [0,
+	 * <li>the row refers to the the subject (set of observed attributes);
+	 * <li>the column refers to the attribute and lies within the range [0,
 	 * (1 + markovLag)*n[, where [0, markovLag*n[ refers to attributes in the
 	 * past andand [markovLag*n, (1 + markovLag)*n[ refers to attributes in time
 	 * t+1.
 	 * </ul>
 	 */
-	private int[][][] usefulObservations;
+	private CodedRows[] usefulObservations;
+
+	/**
+	 * Column-major copy of the useful observations, used for counting. Each
+	 * transition is built from usefulObservations when first needed.
+	 * <ul>
+	 * <li>the 1st index refers to the transition {t - markovLag + 1, ...
+	 * ,t}->t+1, except for the last one, which refers to all transitions
+	 * pooled together (stationary process);
+	 * <li>the 2nd index refers to the attribute, as the column of
+	 * usefulObservations;
+	 * <li>the 3rd index refers to the subject.
+	 * </ul>
+	 */
+	private int[][][] observationColumns = null;
+
+	/**
+	 * Attributes with at most this number of values are also stored as bit
+	 * planes.
+	 */
+	private static final int MAX_BIT_SLICED_SIZE = 4;
+
+	/**
+	 * Bit-sliced copy of the useful observations of low-cardinality
+	 * attributes, used for counting. Each transition is built from
+	 * usefulObservations when first needed.
+	 * <ul>
+	 * <li>the 1st index refers to the transition {t - markovLag + 1, ...
+	 * ,t}->t+1, except for the last one, which refers to all transitions
+	 * pooled together (stationary process);
+	 * <li>the 2nd index refers to the attribute, as the 3rd index of
+	 * usefulObservations, and is null if the attribute has more than
+	 * MAX_BIT_SLICED_SIZE values;
+	 * <li>the 3rd index refers to the bit of the coded value;
+	 * <li>the 4th index refers to a block of 64 subjects, one per bit.
+	 * </ul>
+	 */
+	private long[][][][] observationBitPlanes = null;
+
+	/**
+	 * Memoized parents' configurations of the pooled observations, used for
+	 * building count tables. If null, count tables are not available.
+	 */
+	private CountCache countCache = null;
+
+	/**
+	 * Parents' configurations of the pooled observations, updated
+	 * incrementally from one parent set to the next, used for building count
+	 * tables when there is no count cache. If null, count tables are only
+	 * built from the count cache.
+	 */
+	private IncrementalCounter incrementalCounter = null;
+
+	/**
+	 * Logarithms of all possible counts, built when first needed.
+	 */
+	private LogTable logTable = null;
+
+	/**
+	 * Count tables larger than this are not built, and counting falls back to
+	 * matching one parents' configuration at a time.
+	 */
+	private static final int MAX_COUNT_TABLE_SIZE = 1 << 24;
+
+	/**
+	 * Number of observations read at a time when accumulating the contingency
+	 * tables of several pairs of positions.
+	 */
+	private static final int MUTUAL_INFORMATION_BLOCK_SIZE = 1024;
 
 	/**
 	 * Three-dimensional matrix of non-coded observation data that will be
@@ -63,6 +134,11 @@ public class Observations {
 	 */
 	private int[] numSubjects;
 
+	/**
+	 * Number of subjects over all transitions, computed when first needed.
+	 */
+	private int numAllSubjects = -1;
+
 	/**
 	 * File that contains observations that will be converted to attributes and
 	 * from which one can learn a DBN.
@@ -92,6 +168,27 @@ public class Observations {
 	 */
 	private int markovLag = 1;
 
+	/**
+	 * Attributes of the useful observations file that are used for learning,
+	 * given either by name or by (zero-based, per time slice) index. If null,
+	 * all attributes in the file are used.
+	 */
+	private List<String> selectedAttributes = null;
+
+	/**
+	 * Discretization applied to numeric attributes when reading the useful
+	 * observations file. If null, every distinct numeric value is a different
+	 * attribute value.
+	 */
+	private Discretization discretization = null;
+
+	/**
+	 * Declared attributes of the useful observations file. If null, attribute
+	 * types are inferred from the first observation and their values are
+	 * collected while reading.
+	 */
+	private Schema schema = null;
+
 	/**
 	 * Default constructor when reading observations from a file.
 	 * 
@@ -131,14 +228,45 @@ public class Observations {
 	 *            File which contains observations that will be included
 	 *            unchanged in the output. These are ignored when learning a
 	 *            DBN.
+	 * @param selectedAttributes
+	 *            Names or indices of the attributes of the useful observations
+	 *            file that are loaded. Columns of other attributes are
+	 *            discarded as soon as they are read. If null, all attributes
+	 *            are loaded.
+	 * @param discretization
+	 *            Discretization of numeric attributes, applied before coding
+	 *            the observations. If null, numeric attributes are not
+	 *            discretized.
+	 * @param schema
+	 *            Declared types and values of the attributes. Values that
+	 *            don't comply to it are rejected while reading. If null,
+	 *            attribute types are inferred from the first observation.
 	 */
-	public Observations(String usefulObsFileName, String passiveObsFileName, Integer markovLag) {
+	public Observations(String usefulObsFileName, String passiveObsFileName, Integer markovLag,
+			List<String> selectedAttributes, Discretization discretization, Schema schema) {
 		this.usefulObservationsFileName = usefulObsFileName;
 		this.passiveObservationsFileName = passiveObsFileName;
 		this.markovLag = markovLag != null ? markovLag : 1;
+		this.selectedAttributes = selectedAttributes;
+		this.discretization = discretization;
+		this.schema = schema;
 		readFromFiles();
 	}
 
+	public Observations(String usefulObsFileName, String passiveObsFileName, Integer markovLag,
+			List<String> selectedAttributes, Discretization discretization) {
+		this(usefulObsFileName, passiveObsFileName, markovLag, selectedAttributes, discretization, null);
+	}
+
+	public Observations(String usefulObsFileName, String passiveObsFileName, Integer markovLag,
+			List<String> selectedAttributes) {
+		this(usefulObsFileName, passiveObsFileName, markovLag, selectedAttributes, null);
+	}
+
+	public Observations(String usefulObsFileName, String passiveObsFileName, Integer markovLag) {
+		this(usefulObsFileName, passiveObsFileName, markovLag, null);
+	}
+
 	public Observations(String usefulObsFileName, String passiveObsFileName) {
 		this(usefulObsFileName, passiveObsFileName, null);
 	}
@@ -151,7 +279,7 @@ public class Observations {
 	 */
 	public Observations(List<Attribute> attributes, int[][][] observationsMatrix) {
 		this.attributes = attributes;
-		this.usefulObservations = observationsMatrix;
+		this.usefulObservations = codeMatrix(observationsMatrix);
 		numSubjects = new int[observationsMatrix.length];
 
 		// assume constant number of observations per transition
@@ -184,14 +312,65 @@ public class Observations {
 		this.passiveObservationsHeader = originalObservations.passiveObservationsHeader;
 		this.passiveObservationsFileName = originalObservations.passiveObservationsFileName;
 		this.subjectIsPresent = originalObservations.subjectIsPresent;
-		this.usefulObservations = newObservationsMatrix;
+		this.usefulObservations = codeMatrix(newObservationsMatrix);
 		this.usefulObservationsHeader = originalObservations.usefulObservationsHeader;
 		this.usefulObservationsFileName = originalObservations.usefulObservationsFileName;
 
 		this.numSubjects = new int[usefulObservations.length];
 
 		// assume constant number of observations per transition
-		Arrays.fill(numSubjects, usefulObservations[0].length);
+		Arrays.fill(numSubjects, newObservationsMatrix[0].length);
+	}
+
+	private static CodedRows[] codeMatrix(int[][][] observationsMatrix) {
+		CodedRows[] rows = new CodedRows[observationsMatrix.length];
+		for (int t = 0; t < rows.length; t++) {
+			int[][] matrix = observationsMatrix[t];
+			rows[t] = new CodedRows(matrix, matrix.length, matrix.length > 0 ? matrix[0].length : 0);
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the same transitions as observed by a process with a shorter
+	 * Markov lag, keeping only the most recent slices before each
+	 * transition. Processes of different lags are thus learnt from the same
+	 * observations of each time slice, and their scores are comparable.
+	 * 
+	 * @param markovLag
+	 *            Markov lag in [1, getMarkovLag()]
+	 */
+	public Observations truncateLag(int markovLag) {
+
+		if (markovLag == this.markovLag)
+			return this;
+
+		int T = numTransitions();
+		int n = numAttributes();
+		int from = (this.markovLag - markovLag) * n;
+		int[][][] truncatedMatrix = new int[T][][];
+		for (int t = 0; t < T; t++) {
+			truncatedMatrix[t] = new int[usefulObservations[t].numRows()][];
+			for (int s = 0; s < truncatedMatrix[t].length; s++)
+				truncatedMatrix[t][s] = usefulObservations[t].getRow(s, from, usefulObservations[t].numColumns());
+		}
+
+		Observations truncated = new Observations(this, truncatedMatrix);
+		truncated.markovLag = markovLag;
+		truncated.numSubjects = numSubjects.clone();
+		if (passiveObservations != null) {
+			int numPassive = numPassiveAttributes();
+			int passiveFrom = (this.markovLag - markovLag) * numPassive;
+			truncated.passiveObservations = new String[T][][];
+			for (int t = 0; t < T; t++) {
+				truncated.passiveObservations[t] = new String[passiveObservations[t].length][];
+				for (int s = 0; s < passiveObservations[t].length; s++)
+					if (passiveObservations[t][s] != null)
+						truncated.passiveObservations[t][s] = Arrays.copyOfRange(passiveObservations[t][s],
+								passiveFrom, passiveObservations[t][s].length);
+			}
+		}
+		return truncated;
 	}
 
 	/**
@@ -274,118 +453,327 @@ public class Observations {
 		return true;
 	}
 
-	private void readFromFiles() {
+	/**
+	 * Resolves the selected attributes into column offsets within a time
+	 * slice, sorted by their order in the file. Each selected attribute is
+	 * looked up by name and, failing that, parsed as an index. If it can't be
+	 * resolved, exits.
+	 * 
+	 * @return the selected column offsets, or null if all attributes are used
+	 */
+	private int[] parseSelectedColumns(String[] header, int numFileAttributes) {
 
-		try {
+		if (selectedAttributes == null)
+			return null;
 
-			// open and parse the useful observations csv file
-			CSVReader reader = new CSVReader(new FileReader(usefulObservationsFileName));
-			List<String[]> lines = reader.readAll();
-			reader.close();
+		String[] attributeNames = processHeader(header, numFileAttributes);
+		boolean[] selected = new boolean[numFileAttributes];
+
+		for (String attribute : selectedAttributes) {
+			int column = Arrays.asList(attributeNames).indexOf(attribute);
+			if (column < 0) {
+				try {
+					column = Integer.parseInt(attribute);
+				} catch (NumberFormatException e) {
+					column = -1;
+				}
+			}
+			if (column < 0 || column >= numFileAttributes) {
+				System.err.println(Arrays.deepToString(attributeNames));
+				System.err.println("Selected attribute " + attribute + " is not present in the input file.");
+				System.exit(1);
+			}
+			selected[column] = true;
+		}
 
-			ListIterator<String[]> li = lines.listIterator();
+		int numSelected = 0;
+		for (int j = 0; j < numFileAttributes; j++)
+			if (selected[j])
+				numSelected++;
 
-			// get first line
-			String[] header = li.next();
+		int[] columns = new int[numSelected];
+		for (int j = 0, i = 0; j < numFileAttributes; j++)
+			if (selected[j])
+				columns[i++] = j;
 
-			int numTimeSlices = parseNumTimeSlices(header);
-			int numTransitions = numTimeSlices - markovLag;
+		return columns;
+	}
 
-			int numAttributes = (header.length - 1) / numTimeSlices;
-			attributes = new ArrayList<Attribute>(numAttributes);
+	/**
+	 * Keeps only the selected columns of each time slice of the header, along
+	 * with the first (subject ID) column. If no columns are selected, the
+	 * header is returned unchanged. Data lines are projected while they are
+	 * tokenized instead.
+	 * 
+	 * @see #readDataLine(CSVColumnReader, int[], int, int)
+	 */
+	private static String[] projectColumns(String[] line, int[] columns, int numTimeSlices, int numFileAttributes) {
 
-			usefulObservationsHeader = processHeader(header, numAttributes);
+		if (columns == null)
+			return line;
 
-			// allocate observations matrix
-			int totalNumSubjects = lines.size();
-			usefulObservations = new int[numTransitions][totalNumSubjects][(markovLag + 1) * numAttributes];
-			numSubjects = new int[numTransitions];
-			subjectIsPresent = new LinkedHashMap<String, boolean[]>((int) Math.ceil(totalNumSubjects / 0.75));
+		int numAttributes = columns.length;
+		String[] projectedLine = new String[1 + numTimeSlices * numAttributes];
+		projectedLine[0] = line[0];
+		for (int ts = 0; ts < numTimeSlices; ts++)
+			for (int j = 0; j < numAttributes; j++)
+				projectedLine[1 + ts * numAttributes + j] = line[1 + ts * numFileAttributes + columns[j]];
 
-			String[] dataLine = li.next();
+		return projectedLine;
+	}
 
-			// fill attributes from first observation (get their type)
-			// it must not have missing values
-			String[] firstObservation = Arrays.copyOfRange(dataLine, 1, numAttributes + 1);
-			if (countMissingValues(firstObservation) > 0) {
-				System.err.println(firstObservation);
-				System.err.println("First observation contains missing values.");
-				System.exit(1);
+	/**
+	 * Replaces numeric attributes by their discretized version, according to
+	 * the cut points determined from all their values in the input lines.
+	 */
+	private void discretizeAttributes(List<String[]> lines, int numTimeSlices) {
+
+		int numAttributes = numAttributes();
+
+		for (int j = 0; j < numAttributes; j++) {
+
+			Attribute attribute = attributes.get(j);
+			if (!attribute.isNumeric())
+				continue;
+
+			float[] values = new float[lines.size() * numTimeSlices];
+			int numValues = 0;
+			for (String[] dataLine : lines) {
+				for (int ts = 0; ts < numTimeSlices; ts++) {
+					String value = dataLine[1 + ts * numAttributes + j];
+					if (value.length() > 0 && !value.equals("?"))
+						values[numValues++] = Float.parseFloat(value);
+				}
 			}
-			int i = 0;
-			for (String value : firstObservation) {
-				Attribute attribute;
-				// numeric attribute
-				if (Utils.isNumeric(value))
-					attribute = new NumericAttribute();
-				// nominal attribute
-				else
-					attribute = new NominalAttribute();
-				attribute.setName(usefulObservationsHeader[i++]);
-				attributes.add(attribute);
+
+			float[] cutPoints = discretization.getCutPoints(attribute.getName(), Arrays.copyOf(values, numValues));
+			if (cutPoints != null) {
+				Attribute discretizedAttribute = new DiscretizedAttribute(cutPoints);
+				discretizedAttribute.setName(attribute.getName());
+				attributes.set(j, discretizedAttribute);
 			}
+		}
+	}
 
-			// rewind one line
-			li.previous();
+	/**
+	 * Returns the indices of the fields of an input line that hold the
+	 * subject ID and the selected columns of each time slice, in increasing
+	 * order, or null if no columns are selected.
+	 */
+	private static int[] keptFields(int[] columns, int numTimeSlices, int numFileAttributes) {
 
-			// auxiliary variable
-			String[][] observations = new String[markovLag + 1][numAttributes];
+		if (columns == null)
+			return null;
 
-			while (li.hasNext()) {
+		int numAttributes = columns.length;
+		int[] fields = new int[1 + numTimeSlices * numAttributes];
+		for (int ts = 0; ts < numTimeSlices; ts++)
+			for (int j = 0; j < numAttributes; j++)
+				fields[1 + ts * numAttributes + j] = 1 + ts * numFileAttributes + columns[j];
 
-				dataLine = li.next();
+		return fields;
+	}
 
-				// check for line sanity
-				if (dataLine.length != numTimeSlices * numAttributes + 1) {
-					System.err.println(Arrays.deepToString(dataLine));
-					System.err
-							.println("Observations file: input data line does not have the correct number of columns.");
-					System.err.println("Line length: " + dataLine.length);
-					System.err.println("Number of time slices: " + numTimeSlices);
-					System.err.println("Number of attributes: " + numAttributes);
-					System.exit(1);
-				}
+	/**
+	 * Reads the next data line of the useful observations file. Only the
+	 * fields of the subject ID and the selected columns are tokenized. If the
+	 * line does not have the number of columns of the header, exits.
+	 * 
+	 * @param keptFields
+	 *            fields to keep, or null to keep all
+	 * @return the kept fields, or null at the end of the file
+	 */
+	private static String[] readDataLine(CSVColumnReader reader, int[] keptFields, int numTimeSlices,
+			int numFileAttributes) throws IOException {
+
+		String[] dataLine = reader.readNext(keptFields);
+		if (dataLine == null)
+			return null;
+
+		// check for line sanity
+		if (reader.getNumFields() != numTimeSlices * numFileAttributes + 1) {
+			System.err.println(Arrays.deepToString(dataLine));
+			System.err.println("Observations file: input data line does not have the correct number of columns.");
+			System.err.println("Line length: " + reader.getNumFields());
+			System.err.println("Number of time slices: " + numTimeSlices);
+			System.err.println("Number of attributes: " + numFileAttributes);
+			System.exit(1);
+		}
 
-				// record subject id
-				String subject = dataLine[0];
-				subjectIsPresent.put(subject, new boolean[numTransitions]);
+		return dataLine;
+	}
 
-				for (int t = 0; t < numTransitions; t++) {
+	/**
+	 * Codes the observations of a subject and appends them to the
+	 * transitions where all of their slices are present. New values are added
+	 * to the attributes; if they exceed the declared capacities, exits.
+	 * 
+	 * @param attributeCapacities
+	 *            maximum number of values of each attribute, or null if
+	 *            attributes are not declared
+	 */
+	private void codeDataLine(String[] dataLine, int[] attributeCapacities) {
+
+		int numTransitions = numTransitions();
+		int numAttributes = numAttributes();
 
-					boolean observationsOk = true;
+		// auxiliary variables
+		String[][] observations = new String[markovLag + 1][numAttributes];
+		int[] codes = new int[(markovLag + 1) * numAttributes];
 
-					// obtain and check observations for each slice
-					for (int ts = 0; ts < markovLag + 1; ts++) {
-						observations[ts] = Arrays.copyOfRange(dataLine, 1 + (t + ts) * numAttributes, 1 + (t + ts + 1)
-								* numAttributes);
-						if (!observationIsOk(observations[ts])) {
-							observationsOk = false;
-							break;
-						}
+		// record subject id
+		String subject = dataLine[0];
+		subjectIsPresent.put(subject, new boolean[numTransitions]);
+
+		for (int t = 0; t < numTransitions; t++) {
+
+			boolean observationsOk = true;
+
+			// obtain and check observations for each slice
+			for (int ts = 0; ts < markovLag + 1; ts++) {
+				observations[ts] = Arrays.copyOfRange(dataLine, 1 + (t + ts) * numAttributes, 1 + (t + ts + 1)
+						* numAttributes);
+				if (!observationIsOk(observations[ts])) {
+					observationsOk = false;
+					break;
+				}
+			}
+
+			if (observationsOk) {
+
+				// observations are sane, store them
+				subjectIsPresent.get(subject)[t] = true;
+				for (int j = 0; j < (markovLag + 1) * numAttributes; j++) {
+					String value = dataLine[1 + t * numAttributes + j];
+					int attributeId = j % numAttributes;
+					Attribute attribute = attributes.get(attributeId);
+					try {
+						// new values must not exceed the declared ones
+						if (attribute.add(value) && attributeCapacities != null
+								&& attribute.size() > attributeCapacities[attributeId])
+							throw new IllegalArgumentException();
+						codes[j] = attribute.getIndex(value);
+					} catch (IllegalArgumentException e) {
+						System.err.println(Arrays.deepToString(dataLine));
+						System.err.println("Observations file: value " + value + " of attribute "
+								+ attribute.getName() + " is not valid.");
+						System.exit(1);
 					}
+				}
+				usefulObservations[t].addRow(codes);
 
-					if (observationsOk) {
-
-						// observations are sane, store them
-						subjectIsPresent.get(subject)[t] = true;
-						String[] transition = Arrays.copyOfRange(dataLine, 1 + t * numAttributes, 1
-								+ (t + markovLag + 1) * numAttributes);
-						for (int j = 0; j < (markovLag + 1) * numAttributes; j++) {
-							String value = transition[j];
-							int attributeId = j % numAttributes;
-							Attribute attribute = attributes.get(attributeId);
-							attribute.add(value);
-							usefulObservations[t][numSubjects[t]][j] = attribute.getIndex(value);
-						}
-						numSubjects[t]++;
+			} else {
+				// if one of the observations has missing values,
+				// they are not used in this transition
+				subjectIsPresent.get(subject)[t] = false;
+			}
+
+		}
+	}
+
+	private void readFromFiles() {
+
+		try {
+
+			// open and parse the useful observations csv file
+			CSVColumnReader reader = new CSVColumnReader(new FileReader(usefulObservationsFileName));
+
+			// get first line
+			String[] header = reader.readNext();
+
+			int numTimeSlices = parseNumTimeSlices(header);
+			int numTransitions = numTimeSlices - markovLag;
+
+			int numFileAttributes = (header.length - 1) / numTimeSlices;
+			int[] selectedColumns = parseSelectedColumns(header, numFileAttributes);
+			int[] keptFields = keptFields(selectedColumns, numTimeSlices, numFileAttributes);
+
+			header = projectColumns(header, selectedColumns, numTimeSlices, numFileAttributes);
+
+			int numAttributes = (header.length - 1) / numTimeSlices;
+			attributes = new ArrayList<Attribute>(numAttributes);
 
-					} else {
-						// if one of the observations has missing values,
-						// they are not used in this transition
-						subjectIsPresent.get(subject)[t] = false;
+			usefulObservationsHeader = processHeader(header, numAttributes);
+
+			String[] dataLine = readDataLine(reader, keptFields, numTimeSlices, numFileAttributes);
+
+			// maximum number of values of each attribute, if declared
+			int[] attributeCapacities = null;
+
+			if (schema != null) {
+				// fill attributes from schema, with all their declared values
+				attributeCapacities = new int[numAttributes];
+				for (int i = 0; i < numAttributes; i++) {
+					String name = usefulObservationsHeader[i];
+					if (!schema.contains(name)) {
+						System.err.println("Attribute " + name + " is not declared in the schema file.");
+						System.exit(1);
 					}
+					attributes.add(schema.createAttribute(name));
+					attributeCapacities[i] = schema.getCapacity(name);
+				}
 
+			} else {
+				if (dataLine == null) {
+					System.err.println("Observations file has no data lines.");
+					System.exit(1);
+				}
+
+				// fill attributes from first observation (get their type)
+				// it must not have missing values
+				String[] firstObservation = Arrays.copyOfRange(dataLine, 1, numAttributes + 1);
+				if (countMissingValues(firstObservation) > 0) {
+					System.err.println(firstObservation);
+					System.err.println("First observation contains missing values.");
+					System.exit(1);
 				}
+				int i = 0;
+				for (String value : firstObservation) {
+					Attribute attribute;
+					// numeric attribute
+					if (Utils.isNumeric(value))
+						attribute = new NumericAttribute();
+					// nominal attribute
+					else
+						attribute = new NominalAttribute();
+					attribute.setName(usefulObservationsHeader[i++]);
+					attributes.add(attribute);
+				}
+			}
+
+			// storage type is chosen from the declared number of values, and
+			// widened while coding if undeclared values need it
+			int maxCode = 0;
+			if (attributeCapacities != null)
+				for (int capacity : attributeCapacities)
+					maxCode = Math.max(maxCode, capacity - 1);
+			usefulObservations = new CodedRows[numTransitions];
+			for (int t = 0; t < numTransitions; t++)
+				usefulObservations[t] = new CodedRows((markovLag + 1) * numAttributes, maxCode);
+			subjectIsPresent = new LinkedHashMap<String, boolean[]>();
+
+			// code each data line as soon as it is read; lines are only kept
+			// when numeric attributes are discretized, as cut points depend
+			// on all their values
+			if (discretization != null) {
+				List<String[]> lines = new ArrayList<String[]>();
+				for (; dataLine != null; dataLine = readDataLine(reader, keptFields, numTimeSlices,
+						numFileAttributes))
+					lines.add(dataLine);
+				discretizeAttributes(lines, numTimeSlices);
+				for (String[] line : lines)
+					codeDataLine(line, attributeCapacities);
+			} else {
+				for (; dataLine != null; dataLine = readDataLine(reader, keptFields, numTimeSlices,
+						numFileAttributes))
+					codeDataLine(dataLine, attributeCapacities);
+			}
+			reader.close();
+
+			numSubjects = new int[numTransitions];
+			for (int t = 0; t < numTransitions; t++) {
+				usefulObservations[t].trim();
+				numSubjects[t] = usefulObservations[t].numRows();
 			}
 
 		} catch (IOException e) {
@@ -479,11 +867,13 @@ public class Observations {
 
 		// stationary process
 		if (transition < 0) {
-			int numObs = 0;
-			int T = numTransitions();
-			for (int t = 0; t < T; t++)
-				numObs += numSubjects[t];
-			return numObs;
+			if (numAllSubjects < 0) {
+				numAllSubjects = 0;
+				int T = numTransitions();
+				for (int t = 0; t < T; t++)
+					numAllSubjects += numSubjects[t];
+			}
+			return numAllSubjects;
 		}
 
 		// time-varying process
@@ -506,41 +896,524 @@ public class Observations {
 		int numSubjects = this.numSubjects[0];
 		List<int[]> initialObservations = new ArrayList<int[]>(numSubjects);
 		for (int s = 0; s < numSubjects; s++)
-			initialObservations.add(Arrays.copyOfRange(usefulObservations[0][s], 0, markovLag * numAttributes()));
+			initialObservations.add(usefulObservations[0].getRow(s, 0, markovLag * numAttributes()));
 		return initialObservations;
 	}
 
+	/**
+	 * Returns a copy of the coded observations, where the 1st index refers to
+	 * the transition, the 2nd to the subject and the 3rd to the attribute.
+	 */
 	public int[][][] getObservationsMatrix() {
-		return usefulObservations;
+		int[][][] observationsMatrix = new int[usefulObservations.length][][];
+		for (int t = 0; t < usefulObservations.length; t++) {
+			observationsMatrix[t] = new int[usefulObservations[t].numRows()][];
+			for (int s = 0; s < observationsMatrix[t].length; s++)
+				observationsMatrix[t][s] = usefulObservations[t].getRow(s);
+		}
+		return observationsMatrix;
 	}
 
 	public String[][][] getPassiveObservationsMatrix() {
 		return passiveObservations;
 	}
 
+	/**
+	 * Returns the observations of a transition in column-major order, one
+	 * array per attribute of the transition. If transition is negative,
+	 * returns the observations of all transitions pooled together. Columns
+	 * are built the first time they are requested.
+	 */
+	private int[][] getObservationColumns(int transition) {
+
+		int T = numTransitions();
+		if (observationColumns == null)
+			observationColumns = new int[T + 1][][];
+
+		int index = transition < 0 ? T : transition;
+		if (observationColumns[index] == null) {
+			int numColumns = (markovLag + 1) * numAttributes();
+			int[][] columns = new int[numColumns][numObservations(transition)];
+			int i = 0;
+			for (int t = 0; t < T; t++) {
+				if (transition >= 0 && t != transition)
+					continue;
+				for (int j = 0; j < numColumns; j++)
+					usefulObservations[t].getColumn(j, columns[j], i);
+				i += numSubjects[t];
+			}
+			observationColumns[index] = columns;
+		}
+
+		return observationColumns[index];
+	}
+
+	/**
+	 * Returns the observations of a transition as bit planes, one set of
+	 * planes per attribute of the transition with at most
+	 * MAX_BIT_SLICED_SIZE values. If transition is negative, returns the
+	 * observations of all transitions pooled together. Bit planes are built
+	 * the first time they are requested.
+	 */
+	private long[][][] getObservationBitPlanes(int transition) {
+
+		int T = numTransitions();
+		if (observationBitPlanes == null)
+			observationBitPlanes = new long[T + 1][][][];
+
+		int index = transition < 0 ? T : transition;
+		if (observationBitPlanes[index] == null) {
+			int n = numAttributes();
+			int numColumns = (markovLag + 1) * n;
+			int numBlocks = (numObservations(transition) + 63) / 64;
+			long[][][] columnBitPlanes = new long[numColumns][][];
+			for (int j = 0; j < numColumns; j++) {
+				int size = attributes.get(j % n).size();
+				if (size > MAX_BIT_SLICED_SIZE)
+					continue;
+				// bits needed to code all values
+				int numBits = 32 - Integer.numberOfLeadingZeros(size - 1);
+				long[][] bitPlanes = new long[numBits][numBlocks];
+				int i = 0;
+				for (int t = 0; t < T; t++) {
+					if (transition >= 0 && t != transition)
+						continue;
+					for (int s = 0; s < numSubjects[t]; s++, i++) {
+						int value = usefulObservations[t].get(s, j);
+						for (int k = 0; k < numBits; k++)
+							if (((value >> k) & 1) != 0)
+								bitPlanes[k][i / 64] |= 1L << (i % 64);
+					}
+				}
+				columnBitPlanes[j] = bitPlanes;
+			}
+			observationBitPlanes[index] = columnBitPlanes;
+		}
+
+		return observationBitPlanes[index];
+	}
+
 	/**
 	 * Given a network configuration (parents and child values), counts all
 	 * observations in some transition that are compatible with it. If
 	 * transition is negative, counts matches in all transitions.
 	 */
 	public int count(LocalConfiguration c, int transition) {
+		int N = numObservations(transition);
+		long[][][] bitPlanes = getObservationBitPlanes(transition);
+		if (c.hasBitPlanes(bitPlanes))
+			return c.countMatches(bitPlanes, N);
+		return c.countMatches(getObservationColumns(transition), N);
+	}
 
-		// stationary process
-		if (transition < 0) {
-			int allMatches = 0;
-			int T = numTransitions();
-			for (int t = 0; t < T; t++)
-				allMatches += count(c, t);
-			return allMatches;
+	/**
+	 * Given a network configuration, counts the observations in some
+	 * transition that are compatible with its parents' values, for each value
+	 * of the child. All counts are obtained in a single pass over the data. If
+	 * transition is negative, counts matches in all transitions.
+	 * 
+	 * @param childCounts
+	 *            array of size at least equal to the child range, where
+	 *            childCounts[k] is set to the count of child value k
+	 */
+	public void countChildValues(LocalConfiguration c, int transition, int[] childCounts) {
+		Arrays.fill(childCounts, 0);
+		int N = numObservations(transition);
+		long[][][] bitPlanes = getObservationBitPlanes(transition);
+		if (c.hasBitPlanes(bitPlanes, true))
+			c.countChildValues(bitPlanes, N, childCounts);
+		else
+			c.countChildValues(getObservationColumns(transition), N, childCounts);
+	}
+
+	/**
+	 * Given a network configuration, counts the observations in each
+	 * transition that are compatible with its parents' values, for each value
+	 * of the child. The counts of all transitions are obtained in a single
+	 * pass over the pooled observations, where the transitions are stored
+	 * contiguously.
+	 * 
+	 * @param childCounts
+	 *            array of size equal to the number of transitions, where
+	 *            childCounts[t][k] is set to the count of child value k in
+	 *            transition t
+	 */
+	public void countChildValues(LocalConfiguration c, int[][] childCounts) {
+
+		int T = numTransitions();
+
+		long[][][] bitPlanes = getObservationBitPlanes(-1);
+		boolean bitSliced = c.hasBitPlanes(bitPlanes, true);
+		int[][] columns = bitSliced ? null : getObservationColumns(-1);
+
+		int from = 0;
+		for (int t = 0; t < T; t++) {
+			int to = from + numSubjects[t];
+			Arrays.fill(childCounts[t], 0);
+			if (bitSliced)
+				c.countChildValues(bitPlanes, from, to, childCounts[t]);
+			else
+				c.countChildValues(columns, from, to, childCounts[t]);
+			from = to;
 		}
+	}
 
-		// time-varying process
-		int matches = 0;
-		int N = numObservations(transition);
-		for (int i = 0; i < N; i++)
-			if (c.matches(usefulObservations[transition][i]))
-				matches++;
-		return matches;
+	/**
+	 * Enables count tables, memoizing parents' configurations up to some
+	 * memory budget.
+	 * 
+	 * @param budget
+	 *            maximum memory taken by memoized configurations, in bytes
+	 * @see CountCache
+	 */
+	public void setCountCacheBudget(long budget) {
+		countCache = new CountCache(getObservationColumns(-1), getColumnRanges(), numObservations(-1), budget);
+	}
+
+	/**
+	 * @return the number of values of the attribute in each column of a
+	 *         transition
+	 */
+	private int[] getColumnRanges() {
+		int n = numAttributes();
+		int numColumns = (markovLag + 1) * n;
+		int[] columnRanges = new int[numColumns];
+		for (int j = 0; j < numColumns; j++)
+			columnRanges[j] = attributes.get(j % n).size();
+		return columnRanges;
+	}
+
+	public CountCache getCountCache() {
+		return countCache;
+	}
+
+	/**
+	 * Enables count tables built from parents' configurations that are
+	 * updated incrementally, which is efficient when consecutive parent sets
+	 * differ by a single parent. Memoized configurations take precedence, if
+	 * a count cache is enabled.
+	 * 
+	 * @see IncrementalCounter
+	 */
+	public void setIncrementalCounting(boolean state) {
+		if (!state) {
+			incrementalCounter = null;
+			return;
+		}
+		incrementalCounter = new IncrementalCounter(getObservationColumns(-1), getColumnRanges(), markovLag
+				* numAttributes(), numObservations(-1));
+	}
+
+	/**
+	 * Returns a table of logarithms of all counts up to the number of
+	 * observations in all transitions, shared by all scoring functions.
+	 */
+	public LogTable getLogTable() {
+		if (logTable == null)
+			logTable = new LogTable(numObservations(-1));
+		return logTable;
+	}
+
+	/**
+	 * Computes the mutual information, in nats, between two positions of the
+	 * configuration array, in a single pass over the observations of all
+	 * transitions.
+	 * 
+	 * @param index1
+	 *            position in [0,(markovLag+1)*numAttributes()[
+	 * @param index2
+	 *            position in [0,(markovLag+1)*numAttributes()[
+	 */
+	public double mutualInformation(int index1, int index2) {
+		return mutualInformation(new int[] { index1 }, new int[] { index2 })[0][0];
+	}
+
+	/**
+	 * Computes the mutual information, in nats, between each position in
+	 * indices1 and each position in indices2 of the configuration array. The
+	 * contingency tables of all pairs are accumulated in a single pass over
+	 * the observations of all transitions, which are read in blocks that stay
+	 * in cache while every pair is counted.
+	 * 
+	 * @return the mutual information between indices1[a] and indices2[b], in
+	 *         position [a][b]
+	 */
+	public double[][] mutualInformation(int[] indices1, int[] indices2) {
+
+		int n = numAttributes();
+		int[][] columns = getObservationColumns(-1);
+		int N = numObservations(-1);
+
+		int[] ranges1 = new int[indices1.length];
+		for (int a = 0; a < indices1.length; a++)
+			ranges1[a] = attributes.get(indices1[a] % n).size();
+		int[] ranges2 = new int[indices2.length];
+		for (int b = 0; b < indices2.length; b++)
+			ranges2[b] = attributes.get(indices2[b] % n).size();
+
+		int[][][] joint = new int[indices1.length][indices2.length][];
+		for (int a = 0; a < indices1.length; a++)
+			for (int b = 0; b < indices2.length; b++)
+				joint[a][b] = new int[ranges1[a] * ranges2[b]];
+
+		for (int from = 0; from < N; from += MUTUAL_INFORMATION_BLOCK_SIZE) {
+			int to = Math.min(N, from + MUTUAL_INFORMATION_BLOCK_SIZE);
+			for (int a = 0; a < indices1.length; a++) {
+				int[] column1 = columns[indices1[a]];
+				for (int b = 0; b < indices2.length; b++) {
+					int[] column2 = columns[indices2[b]];
+					int range2 = ranges2[b];
+					int[] table = joint[a][b];
+					for (int s = from; s < to; s++)
+						table[column1[s] * range2 + column2[s]]++;
+				}
+			}
+		}
+
+		double[][] mi = new double[indices1.length][indices2.length];
+		for (int a = 0; a < indices1.length; a++)
+			for (int b = 0; b < indices2.length; b++)
+				mi[a][b] = mutualInformation(joint[a][b], ranges1[a], ranges2[b], N);
+		return mi;
+	}
+
+	/**
+	 * Computes the mutual information from a contingency table of N
+	 * observations, where entry a * range2 + b counts the joint values (a, b).
+	 */
+	private double mutualInformation(int[] joint, int range1, int range2, int N) {
+
+		int[] marginal1 = new int[range1];
+		int[] marginal2 = new int[range2];
+		for (int a = 0; a < range1; a++)
+			for (int b = 0; b < range2; b++) {
+				marginal1[a] += joint[a * range2 + b];
+				marginal2[b] += joint[a * range2 + b];
+			}
+
+		LogTable logTable = getLogTable();
+		double logN = logTable.log(N);
+		double mi = 0;
+		for (int a = 0; a < range1; a++)
+			for (int b = 0; b < range2; b++) {
+				int Nab = joint[a * range2 + b];
+				if (Nab != 0)
+					mi += Nab * (logTable.log(Nab) + logN - logTable.log(marginal1[a]) - logTable.log(marginal2[b]));
+			}
+
+		return N > 0 ? mi / N : 0;
+	}
+
+	/**
+	 * Given a network configuration, counts the observations in some
+	 * transition for every parents' configuration and child value, in a
+	 * single pass over the memoized or incrementally updated parents'
+	 * configurations. If transition is negative, counts observations in all
+	 * transitions. If there are more parents' configurations than
+	 * observations, only the configurations that occur are counted, by
+	 * grouping observations.
+	 * 
+	 * @return the count table, where entry j * childRange + k is N_ijk for the
+	 *         j-th parents' configuration, in the order of
+	 *         LocalConfiguration#nextParents() and skipping configurations
+	 *         that do not occur if the table is sparse, or null if count
+	 *         tables are not enabled or the table is too large
+	 */
+	public int[] countTable(LocalConfiguration c, int transition) {
+
+		int from = 0;
+		for (int t = 0; t < transition; t++)
+			from += numSubjects[t];
+		int to = transition < 0 ? numObservations(-1) : from + numSubjects[transition];
+
+		int[][] tables = countTables(c, new int[] { from, to }, countCache);
+		return tables != null ? tables[0] : null;
+	}
+
+	/**
+	 * Given a block of network configurations, counts the observations in
+	 * some transition as in {@link #countTable(LocalConfiguration, int)},
+	 * sharing the partitions of the observations by parents' configurations
+	 * across the block. If neither the count cache nor incremental counting
+	 * is enabled, partitions are memoized in a cache local to the block.
+	 * 
+	 * @return tables[b] is the count table of block.get(b), or null if not
+	 *         available
+	 */
+	public int[][] countTable(List<LocalConfiguration> block, int transition) {
+
+		int from = 0;
+		for (int t = 0; t < transition; t++)
+			from += numSubjects[t];
+		int to = transition < 0 ? numObservations(-1) : from + numSubjects[transition];
+
+		int[][][] tables = countTables(block, new int[] { from, to });
+		int[][] result = new int[block.size()][];
+		for (int b = 0; b < result.length; b++)
+			result[b] = tables[b] != null ? tables[b][0] : null;
+		return result;
+	}
+
+	/**
+	 * Given a block of network configurations, builds the count tables of
+	 * every transition as in {@link #countTables(LocalConfiguration)},
+	 * sharing partitions across the block as in
+	 * {@link #countTable(List, int)}.
+	 * 
+	 * @return tables[b] is the count tables of block.get(b), or null if not
+	 *         available
+	 */
+	public int[][][] countTables(List<LocalConfiguration> block) {
+
+		int T = numTransitions();
+		int[] bounds = new int[T + 1];
+		for (int t = 0; t < T; t++)
+			bounds[t + 1] = bounds[t] + numSubjects[t];
+
+		return countTables(block, bounds);
+	}
+
+	private int[][][] countTables(List<LocalConfiguration> block, int[] bounds) {
+
+		CountCache cache = countCache;
+		if (cache == null && incrementalCounter == null) {
+			// room for the partitions of all prefixes of the largest parent set
+			int maxParents = 0;
+			for (LocalConfiguration c : block)
+				maxParents = Math.max(maxParents, c.getParentIndices().length);
+			int N = numObservations(-1);
+			cache = new CountCache(getObservationColumns(-1), getColumnRanges(), N, (4L * N + 128) * (maxParents + 1));
+		}
+
+		int[][][] tables = new int[block.size()][][];
+		for (int b = 0; b < tables.length; b++)
+			tables[b] = countTables(block.get(b), bounds, cache);
+		return tables;
+	}
+
+	/**
+	 * Given a network configuration, builds the count table of every
+	 * transition in a single pass over the memoized or incrementally updated
+	 * parents' configurations.
+	 * 
+	 * @return the count tables of each transition, as in
+	 *         {@link #countTable(LocalConfiguration, int)}, or null if count
+	 *         tables are not enabled or are too large
+	 */
+	public int[][] countTables(LocalConfiguration c) {
+
+		int T = numTransitions();
+		int[] bounds = new int[T + 1];
+		for (int t = 0; t < T; t++)
+			bounds[t + 1] = bounds[t] + numSubjects[t];
+
+		return countTables(c, bounds, countCache);
+	}
+
+	/**
+	 * Builds the count tables of the pooled observations in each range
+	 * [bounds[t], bounds[t+1][, memoizing partitions in the given cache, if
+	 * not null.
+	 */
+	private int[][] countTables(LocalConfiguration c, int[] bounds, CountCache cache) {
+
+		// cost bounded by the number of rows, not of configurations
+		int maxRows = 0;
+		for (int t = 0; t < bounds.length - 1; t++)
+			maxRows = Math.max(maxRows, bounds[t + 1] - bounds[t]);
+		if (c.getNumParentConfigurations() > maxRows)
+			return sparseCountTables(c, bounds);
+
+		long tableSize = (long) Math.max(c.getParentsRange(), 1) * c.getChildRange();
+		if (tableSize > MAX_COUNT_TABLE_SIZE)
+			return null;
+
+		if (cache == null) {
+			if (incrementalCounter == null)
+				return null;
+			return incrementalCounter.countTables(c.getParentIndices(), c.getChildIndex(), bounds,
+					MAX_COUNT_TABLE_SIZE);
+		}
+
+		int[] configurations = cache.getConfigurations(c.getParentIndices());
+		if (configurations == null)
+			return null;
+
+		int numTables = bounds.length - 1;
+		int childRange = c.getChildRange();
+		int[][] tables = new int[numTables][(int) tableSize];
+		int[] childColumn = getObservationColumns(-1)[c.getChildIndex()];
+
+		for (int t = 0; t < numTables; t++) {
+			int[] table = tables[t];
+			for (int s = bounds[t]; s < bounds[t + 1]; s++)
+				table[configurations[s] * childRange + childColumn[s]]++;
+		}
+
+		return tables;
+	}
+
+	/**
+	 * Builds the count tables of the pooled observations in each range
+	 * [bounds[t], bounds[t+1][, keeping only the parents' configurations that
+	 * occur. Observations are grouped one parent at a time, from the last to
+	 * the first, with a hash map from the previous group and the parent's
+	 * value to a new group. Groups are renumbered in increasing key order
+	 * after each parent, so they never exceed the number of observations and
+	 * end up in the order of LocalConfiguration#nextParents().
+	 */
+	private int[][] sparseCountTables(LocalConfiguration c, int[] bounds) {
+
+		int[][] columns = getObservationColumns(-1);
+		int[] parentIndices = c.getParentIndices();
+		int[] childColumn = columns[c.getChildIndex()];
+		int childRange = c.getChildRange();
+		int n = numAttributes();
+
+		int numTables = bounds.length - 1;
+		int[][] tables = new int[numTables][];
+
+		for (int t = 0; t < numTables; t++) {
+			int from = bounds[t];
+			int numRows = bounds[t + 1] - from;
+
+			int[] groups = new int[numRows];
+			int numGroups = 1;
+
+			for (int i = parentIndices.length - 1; i >= 0; i--) {
+				int[] column = columns[parentIndices[i]];
+				long range = attributes.get(parentIndices[i] % n).size();
+
+				Map<Long, Integer> ids = new HashMap<Long, Integer>();
+				List<Long> keys = new ArrayList<Long>();
+				for (int s = 0; s < numRows; s++) {
+					Long key = groups[s] * range + column[from + s];
+					Integer id = ids.get(key);
+					if (id == null) {
+						id = keys.size();
+						ids.put(key, id);
+						keys.add(key);
+					}
+					groups[s] = id;
+				}
+
+				// renumber groups in increasing key order
+				Collections.sort(keys);
+				int[] rank = new int[keys.size()];
+				for (int r = 0; r < rank.length; r++)
+					rank[ids.get(keys.get(r))] = r;
+				for (int s = 0; s < numRows; s++)
+					groups[s] = rank[groups[s]];
+				numGroups = rank.length;
+			}
+
+			int[] table = new int[numGroups * childRange];
+			for (int s = 0; s < numRows; s++)
+				table[groups[s] * childRange + childColumn[from + s]]++;
+			tables[t] = table;
+		}
+
+		return tables;
 	}
 
 	public void writeToFile() {
@@ -618,7 +1491,7 @@ public class Observations {
 				// add observations from all except the last time slice
 				for (int t = 0; t < numTransitions; t++) {
 					for (int i = 0; i < numAttributes; i++) {
-						subjectEntries.add(attributes.get(i).get(usefulObservations[t][s][i]));
+						subjectEntries.add(attributes.get(i).get(usefulObservations[t].get(s, i)));
 					}
 
 					if (thereArePassiveObservations) {
@@ -634,7 +1507,7 @@ public class Observations {
 				// add observations from the last time slice
 				for (int i = numAttributes; i < 2 * numAttributes; i++) {
 					subjectEntries.add(attributes.get(i % numAttributes).get(
-							usefulObservations[numTransitions - 1][s][i]));
+							usefulObservations[numTransitions - 1].get(s, i)));
 				}
 
 				if (thereArePassiveObservations) {
@@ -682,9 +1555,9 @@ public class Observations {
 		for (int j = 0; j < numAttributes; j++) {
 			sb.append("A" + j + "\t");
 			for (int t = 0; t < numTransitions; t++) {
-				sb.append(usefulObservations[t][0][j] + "\t");
+				sb.append(usefulObservations[t].get(0, j) + "\t");
 			}
-			sb.append(usefulObservations[numTransitions - 1][0][j + numAttributes] + ls);
+			sb.append(usefulObservations[numTransitions - 1].get(0, j + numAttributes) + ls);
 
 		}
 		sb.append(ls);
@@ -699,11 +1572,11 @@ public class Observations {
 
 		for (int t = 0; t < numTransitions; t++) {
 			for (int j = 0; j < numAttributes; j++)
-				sb.append(usefulObservations[t][0][j] + "\t");
+				sb.append(usefulObservations[t].get(0, j) + "\t");
 			sb.append(ls);
 		}
 		for (int j = 0; j < numAttributes; j++)
-			sb.append(usefulObservations[numTransitions - 1][0][j + numAttributes] + "\t");
+			sb.append(usefulObservations[numTransitions - 1].get(0, j + numAttributes) + "\t");
 		sb.append(ls);
 
 		return sb.toString();
@@ -21,6 +21,20 @@ public class OptimumBranching {
 	}
 
 	public static List<Edge> evaluate(double[][] scoresMatrix, int finalRoot, boolean spanning) {
+		return evaluate(scoresMatrix, null, finalRoot, spanning);
+	}
+
+	/**
+	 * Finds an optimum branching of a sparse graph, where only the edges from
+	 * candidateTails[i] to i are considered. If some node has no candidate
+	 * edges, a spanning branching may not exist and a root is added for it.
+	 * 
+	 * @param candidateTails
+	 *            candidateTails[i] is the list of tails of edges entering i, in
+	 *            increasing order, or null if all edges are considered
+	 */
+	public static List<Edge> evaluate(double[][] scoresMatrix, int[][] candidateTails, int finalRoot,
+			boolean spanning) {
 
 		// INIT phase
 
@@ -74,6 +88,12 @@ public class OptimumBranching {
 
 		// fill incident edges, already sorted by source
 		for (int i = 0; i < n; i++) {
+			if (candidateTails != null) {
+				for (int j : candidateTails[i])
+					if (i != j)
+						incidentEdges.get(i).add(new Edge(j, i, scoresMatrix[i][j]));
+				continue;
+			}
 			for (int j = 0; j < n; j++) {
 				// skip self edges
 				if (i != j) {
@@ -0,0 +1,82 @@
+package com.github.tDBN.dbn;
+
+import java.util.List;
+
+/**
+ * Log-likelihood minus a penalty on the number of parameters of the family.
+ * The penalty is computed from the configuration built for counting, so a
+ * family is scored in a single pass over the observations.
+ * 
+ * @author zlm
+ * 
+ */
+public class PenalizedScoringFunction extends LLScoringFunction {
+
+	private Penalty penalty;
+
+	public PenalizedScoringFunction(Penalty penalty) {
+		this.penalty = penalty;
+	}
+
+	@Override
+	protected double penalty(Observations observations, int transition, LocalConfiguration c) {
+		return penalty.evaluate(c.getNumParameters(), observations.numObservations(transition),
+				observations.getLogTable());
+	}
+
+	/**
+	 * Returns an upper bound on the score of a family, without counting. The
+	 * bound relies only on the log-likelihood never being positive, so the
+	 * score is at most the negated penalty. Adding parents never decreases
+	 * the number of parameters, so the bound also holds for every superset of
+	 * the parents. The penalty grows with the logarithm of the number of
+	 * observations while the log-likelihood grows linearly, so the bound
+	 * prunes little on larger datasets.
+	 */
+	public double upperBound(Observations observations, int transition, List<Integer> parentNodesPast,
+			Integer parentNodePresent, int childNode) {
+		return upperBound(observations, transition, LocalConfiguration.toArray(parentNodesPast),
+				toNode(parentNodePresent), childNode);
+	}
+
+	/**
+	 * Returns an upper bound on the score of a family, as
+	 * {@link #upperBound(Observations, int, List, Integer, int)}.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 */
+	public double upperBound(Observations observations, int transition, int[] parentNodesPast,
+			int parentNodePresent, int childNode) {
+
+		LocalConfiguration c = new LocalConfiguration(observations.getAttributes(), observations.getMarkovLag(),
+				parentNodesPast, parentNodePresent, childNode);
+
+		return upperBound(observations, transition, c);
+	}
+
+	/**
+	 * Returns an upper bound on the score of a family, as
+	 * {@link #upperBound(Observations, int, List, Integer, int)}, from a
+	 * configuration of the family, so that it can be built once for all
+	 * transitions.
+	 */
+	public double upperBound(Observations observations, int transition, LocalConfiguration c) {
+
+		// same arithmetic as evaluate with a log-likelihood of zero
+		double score = 0;
+		score -= penalty(observations, transition, c);
+
+		return score;
+	}
+
+	public Penalty getPenalty() {
+		return penalty;
+	}
+
+	@Override
+	public String toString() {
+		return penalty.toString();
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Regularizer term subtracted from the log-likelihood of a family by
+ * {@link PenalizedScoringFunction}. For pruning with upper bounds to be exact,
+ * a penalty must be non-negative and must not decrease when the number of
+ * parameters grows.
+ * 
+ * @author zlm
+ * 
+ */
+public interface Penalty {
+
+	/**
+	 * Minimum description length penalty, 0.5*log(N) per parameter, which is
+	 * the same as the Bayesian information criterion.
+	 */
+	public static final Penalty MDL = new Penalty() {
+		@Override
+		public double evaluate(long numParameters, int numObservations, LogTable logTable) {
+			return 0.5 * logTable.log(numObservations) * numParameters;
+		}
+
+		@Override
+		public String toString() {
+			return "MDL";
+		}
+	};
+
+	/**
+	 * Akaike information criterion penalty, 1 per parameter.
+	 */
+	public static final Penalty AIC = new Penalty() {
+		@Override
+		public double evaluate(long numParameters, int numObservations, LogTable logTable) {
+			return numParameters;
+		}
+
+		@Override
+		public String toString() {
+			return "AIC";
+		}
+	};
+
+	/**
+	 * @param numParameters
+	 *            number of free parameters of the family
+	 * @param numObservations
+	 *            number of observations the family was counted on
+	 * @param logTable
+	 *            logarithms of counts up to at least numObservations, so that
+	 *            penalties don't need to compute them
+	 * @return the penalty of a family
+	 */
+	public double evaluate(long numParameters, int numObservations, LogTable logTable);
+
+}
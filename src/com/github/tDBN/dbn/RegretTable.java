@@ -0,0 +1,129 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Tabulates log C(r, n), the logarithm of the regret of a multinomial
+ * variable with r values over n observations, which normalizes its NML
+ * distribution, for some ranges r and all counts n up to a maximum count.
+ * C(1, n) = 1 and C(2, n) is the sum over h of binom(n, h) (h/n)^h
+ * ((n-h)/n)^(n-h), summed exactly up to MAX_EXACT_COUNT and given by
+ * Szpankowski's expansion beyond it, with relative error below 1e-10. Larger
+ * ranges follow the Kontkanen-Myllymaki recurrence C(r+2, n) = C(r+1, n) +
+ * n/r C(r, n), evaluated in logarithms so that regrets of large ranges don't
+ * overflow. The whole table costs O(maxRange * maxCount) operations.
+ * 
+ * @see LogTable
+ * 
+ * @author zlm
+ * 
+ */
+public class RegretTable {
+
+	/**
+	 * Largest count n for which C(2, n) is summed exactly, in O(n)
+	 * operations.
+	 */
+	private static final int MAX_EXACT_COUNT = 1000;
+
+	/**
+	 * logRegrets[r][n] is log C(r, n), or logRegrets[r] is null if range r is
+	 * not tabulated.
+	 */
+	private double[][] logRegrets;
+
+	private int maxCount;
+
+	/**
+	 * @param ranges
+	 *            ranges to tabulate, each at least 1
+	 * @param maxCount
+	 *            largest count to tabulate
+	 */
+	public RegretTable(int[] ranges, int maxCount) {
+
+		this.maxCount = maxCount;
+
+		int maxRange = 1;
+		for (int r : ranges)
+			maxRange = Math.max(maxRange, r);
+		logRegrets = new double[maxRange + 1][];
+
+		boolean[] tabulated = new boolean[maxRange + 1];
+		for (int r : ranges)
+			tabulated[r] = true;
+
+		// log C(r, n) of the two previous ranges, starting with r = 1
+		double[] previous = new double[maxCount + 1];
+		double[] current = binaryLogRegrets(maxCount);
+		if (tabulated[1])
+			logRegrets[1] = previous;
+
+		for (int r = 2; r <= maxRange; r++) {
+			if (tabulated[r])
+				logRegrets[r] = current;
+			if (r == maxRange)
+				break;
+			// C(r+1, n) = C(r, n) + n/(r-1) C(r-1, n)
+			double[] next = new double[maxCount + 1];
+			for (int n = 0; n <= maxCount; n++)
+				next[n] = current[n] + Math.log1p((double) n / (r - 1) * Math.exp(previous[n] - current[n]));
+			previous = current;
+			current = next;
+		}
+	}
+
+	/**
+	 * Calculates log C(2, n) for all n up to maxCount.
+	 */
+	private static double[] binaryLogRegrets(int maxCount) {
+
+		double[] logRegrets = new double[maxCount + 1];
+
+		int maxExactCount = Math.min(maxCount, MAX_EXACT_COUNT);
+		double[] logFactorials = new double[maxExactCount + 1];
+		for (int x = 1; x <= maxExactCount; x++)
+			logFactorials[x] = logFactorials[x - 1] + Math.log(x);
+
+		for (int n = 1; n <= maxExactCount; n++) {
+			double regret = 0;
+			double logN = Math.log(n);
+			for (int h = 0; h <= n; h++) {
+				double logTerm = logFactorials[n] - logFactorials[h] - logFactorials[n - h];
+				if (h > 0)
+					logTerm += h * (Math.log(h) - logN);
+				if (h < n)
+					logTerm += (n - h) * (Math.log(n - h) - logN);
+				regret += Math.exp(logTerm);
+			}
+			logRegrets[n] = Math.log(regret);
+		}
+
+		for (int n = maxExactCount + 1; n <= maxCount; n++) {
+			double regret = Math.sqrt(n * Math.PI / 2) + 2.0 / 3 + Math.sqrt(2 * Math.PI) / (24 * Math.sqrt(n))
+					- 4.0 / (135 * n) + Math.sqrt(2 * Math.PI) / (576 * Math.pow(n, 1.5));
+			logRegrets[n] = Math.log(regret);
+		}
+
+		return logRegrets;
+	}
+
+	/**
+	 * @return log C(range, count), for a tabulated range and count in [0,
+	 *         maxCount]
+	 */
+	public double logRegret(int range, int count) {
+		return logRegrets[range][count];
+	}
+
+	/**
+	 * @return the log-regrets of a tabulated range, indexed by count, or null
+	 *         if the range is not tabulated
+	 */
+	public double[] getLogRegrets(int range) {
+		return range < logRegrets.length ? logRegrets[range] : null;
+	}
+
+	public int getMaxCount() {
+		return maxCount;
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.github.tDBN.dbn;
+
+/**
+ * Counting loops that process one row at a time. This is the default kernel,
+ * and the one other kernels fall back to for the rows that do not fill a
+ * whole vector.
+ * 
+ * @author zlm
+ * 
+ */
+public class ScalarCountingKernel implements CountingKernel {
+
+	@Override
+	public int countMatches(int[][] columns, int[] indices, int[] values, int childIndex, int childValue, int from,
+			int to) {
+
+		int matches = 0;
+
+		rows: for (int s = from; s < to; s++) {
+			for (int i = 0; i < indices.length; i++) {
+				if (columns[indices[i]][s] != values[i]) {
+					continue rows;
+				}
+			}
+			if (childIndex < 0 || columns[childIndex][s] == childValue) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	@Override
+	public void countChildValues(int[][] columns, int[] indices, int[] values, int[] childColumn, int from, int to,
+			int[] childCounts) {
+
+		rows: for (int s = from; s < to; s++) {
+			for (int i = 0; i < indices.length; i++) {
+				if (columns[indices[i]][s] != values[i]) {
+					continue rows;
+				}
+			}
+			childCounts[childColumn[s]]++;
+		}
+	}
+
+	@Override
+	public void addScaled(int[] configurations, int[] column, int multiplier, int[] result, int from, int to) {
+		for (int s = from; s < to; s++)
+			result[s] = configurations[s] + column[s] * multiplier;
+	}
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.github.tDBN.dbn;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Declares the attributes of an observations file beforehand, so that their
+ * values can be coded and validated while the file is read, without inferring
+ * types from the data.
+ * <p>
+ * Schema file format is the following:
+ * <ul>
+ * <li>One attribute per line, no header
+ * <li>First column is the attribute name, as in the observations file header
+ * <li>Second column is the attribute type, either "numeric" or "nominal"
+ * <li>Remaining columns are either all the values of the attribute or a single
+ * entry "<=k", meaning that the attribute takes at most k different values
+ * </ul>
+ * Schema file example: <br>
+ * <code>resp,nominal,yes,no<br>
+ * age,numeric,<=100<br></code>
+ * 
+ * @author zlm
+ * 
+ */
+public class Schema {
+
+	private static final String BOUND_PREFIX = "<=";
+
+	private Map<String, Boolean> isNumeric = new LinkedHashMap<String, Boolean>();
+
+	/**
+	 * Declared values of each attribute. Attributes declared only by a bound
+	 * on their number of values have no entry.
+	 */
+	private Map<String, String[]> domains = new LinkedHashMap<String, String[]>();
+
+	/**
+	 * Maximum number of values of each attribute.
+	 */
+	private Map<String, Integer> capacities = new LinkedHashMap<String, Integer>();
+
+	public Schema(String schemaFileName) {
+
+		try {
+
+			CSVReader reader = new CSVReader(new FileReader(schemaFileName));
+
+			String[] line;
+			while ((line = reader.readNext()) != null) {
+
+				// skip empty lines
+				if (line.length == 1 && line[0].trim().length() == 0)
+					continue;
+
+				if (line.length < 3 || !(line[1].equals("numeric") || line[1].equals("nominal"))) {
+					System.err.println(Arrays.deepToString(line));
+					System.err.println("Schema file line does not comply to the 'name,type,values' format.");
+					System.exit(1);
+				}
+
+				String name = line[0];
+				isNumeric.put(name, line[1].equals("numeric"));
+
+				if (line.length == 3 && line[2].startsWith(BOUND_PREFIX)) {
+					capacities.put(name, Integer.parseInt(line[2].substring(BOUND_PREFIX.length())));
+				} else {
+					domains.put(name, Arrays.copyOfRange(line, 2, line.length));
+					// repeated values are only counted once
+					capacities.put(name, createAttribute(name).size());
+				}
+			}
+
+			reader.close();
+
+		} catch (IOException e) {
+			System.err.println("File " + schemaFileName + " could not be opened.");
+			e.printStackTrace();
+			System.exit(1);
+		} catch (NumberFormatException e) {
+			System.err.println("Schema file contains an invalid numeric value or bound on the number of values.");
+			System.exit(1);
+		}
+	}
+
+	public boolean contains(String attributeName) {
+		return isNumeric.containsKey(attributeName);
+	}
+
+	/**
+	 * Creates an attribute as declared in the schema, already holding all its
+	 * declared values.
+	 */
+	public Attribute createAttribute(String attributeName) {
+		Attribute attribute = isNumeric.get(attributeName) ? new NumericAttribute() : new NominalAttribute();
+		attribute.setName(attributeName);
+		if (domains.containsKey(attributeName))
+			for (String value : domains.get(attributeName))
+				attribute.add(value);
+		return attribute;
+	}
+
+	/**
+	 * @return the maximum number of values the attribute can take
+	 */
+	public int getCapacity(String attributeName) {
+		return capacities.get(attributeName);
+	}
+
+}
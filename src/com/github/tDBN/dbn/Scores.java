@@ -2,7 +2,12 @@ package com.github.tDBN.dbn;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.github.tDBN.utils.Edge;
 import com.github.tDBN.utils.Utils;
@@ -37,16 +42,94 @@ public class Scores {
 	private int maxParents;
 
 	/**
-	 * A list of all possible sets of parent nodes. Set cardinality lies within
-	 * the range [1, maxParents].
+	 * parentSets.get(i) is a list of all possible sets of parent nodes of
+	 * Xi[t+markovLag]. Set cardinality lies within the range [1, maxParents].
+	 * Unless candidate parents are screened, the same list is shared by all
+	 * nodes. Generated on evaluation.
 	 */
-	private List<List<Integer>> parentSets;
+	private List<List<List<Integer>>> parentSets;
+
+	/**
+	 * Order in which parentSets.get(i) is evaluated, as indices into
+	 * parentSets.get(i). Sets of the same cardinality are in revolving-door
+	 * order, where consecutive sets differ by a single element.
+	 */
+	private int[][] evaluationOrder;
+
+	/**
+	 * parentSetArrays[i][index] holds the nodes of parentSets.get(i).get(index),
+	 * as passed to the scoring function.
+	 */
+	private int[][][] parentSetArrays;
+
+	/**
+	 * Number of candidate parents of each node kept by screening, both in
+	 * {X[t],...,X[t+markovLag-1]} and in X[t+markovLag]. Not screened if not
+	 * positive.
+	 */
+	private int numCandidateParents = 0;
+
+	/**
+	 * candidateParentsPresent[i] is the sorted list of candidate parents of
+	 * Xi[t+markovLag] in X[t+markovLag], or null if not screened.
+	 */
+	private int[][] candidateParentsPresent;
 
 	/**
 	 * If true, evaluates only one score matrix for all transitions.
 	 */
 	private boolean stationaryProcess;
 
+	/**
+	 * If true, parent sets whose score is bounded below the best score found
+	 * so far are not evaluated. Only penalized scores are bounded, by their
+	 * negated penalty.
+	 */
+	private boolean pruning = false;
+
+	/**
+	 * Number of evaluations skipped by pruning in the last evaluation.
+	 */
+	private long numSkippedEvaluations;
+
+	/**
+	 * Upper limit on the number of parents' configurations of a family with
+	 * more than one parent from previous time slices. Not enforced if not
+	 * positive.
+	 */
+	private long maxParentsRange = 0;
+
+	/**
+	 * Number of evaluations skipped by maxParentsRange in the last evaluation.
+	 */
+	private long numCappedEvaluations;
+
+	/**
+	 * Maximum number of parent sets scored in a single call to the scoring
+	 * function.
+	 */
+	private static final int BLOCK_SIZE = 64;
+
+	/**
+	 * numBestScoresPast[t][i] is the number of parent sets of Xi[t+markovLag]
+	 * with the best score when there is no arc from X[t+markovLag] to
+	 * Xi[t+markovLag].
+	 */
+	private int[][] numBestScoresPast;
+
+	/**
+	 * numBestScores[t][i][j] is the number of parent sets of Xi[t+markovLag]
+	 * with the best score when the arc Xj[t+markovLag]->Xi[t+markovLag] is
+	 * present.
+	 */
+	private int[][][] numBestScores;
+
+	/**
+	 * networkScores[t] is the score of the network of transition t found by
+	 * the last conversion to DBN.
+	 */
+	private double[] networkScores;
+
 	private boolean evaluated = false;
 
 	private boolean verbose;
@@ -62,23 +145,6 @@ public class Scores {
 		this.verbose = verbose;
 
 		int n = this.observations.numAttributes();
-		int p = this.maxParents;
-		int markovLag = observations.getMarkovLag();
-
-		// calculate sum_i=1^k nCi
-		int size = n * markovLag;
-		for (int previous = n, i = 2; i <= p; i++) {
-			int current = previous * (n - i + 1) / i;
-			size += current;
-			previous = current;
-		}
-		// TODO: check for size overflow
-
-		// generate parents sets
-		parentSets = new ArrayList<List<Integer>>(size);
-		for (int i = 1; i <= p; i++) {
-			generateCombinations(n * markovLag, i);
-		}
 
 		int numTransitions = stationaryProcess ? 1 : observations.numTransitions();
 		parentNodesPast = new ArrayList<List<List<Integer>>>(numTransitions);
@@ -113,80 +179,702 @@ public class Scores {
 	public Scores evaluate(ScoringFunction sf) {
 
 		int n = observations.numAttributes();
-		int numTransitions = scoresMatrix.length;
 
-		int[] numBestScoresPast = new int[n];
-		int[][] numBestScores = new int[n][n];
+		startEvaluation();
 
-		for (int t = 0; t < numTransitions; t++) {
-			// System.out.println("evaluating score in transition " + t + "/" +
-			// numTransitions);
-			for (int i = 0; i < n; i++) {
-				// System.out.println("evaluating node " + i + "/" + n);
-				double bestScore = Double.NEGATIVE_INFINITY;
-				for (List<Integer> parentSet : parentSets) {
-					double score = stationaryProcess ? sf.evaluate(observations, parentSet, i) : sf.evaluate(
-							observations, t, parentSet, i);
-					// System.out.println("Xi:" + i + " ps:" + parentSet +
-					// " score:" + score);
-					if (bestScore < score) {
-						bestScore = score;
-						parentNodesPast.get(t).set(i, parentSet);
-						numBestScoresPast[i] = 1;
-					} else if (bestScore == score)
-						numBestScoresPast[i]++;
+		for (int i = 0; i < n; i++) {
+			// System.out.println("evaluating node " + i + "/" + n);
+			// scores of each parent set, evaluated in evaluationOrder but
+			// compared in the order of parentSets
+			double[][] scores = evaluateParentSets(sf, -1, i);
+			selectParentSets(scores, -1, i);
+		}
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && isCandidateParentPresent(j, i)) {
+					double[][] scores = evaluateParentSets(sf, j, i);
+					selectParentSets(scores, j, i);
 				}
-				for (int j = 0; j < n; j++) {
-					scoresMatrix[t][i][j] = -bestScore;
+			}
+		}
+
+		if (verbose) {
+			printNumSolutions();
+			if (pruning)
+				System.out.println("Number of evaluations skipped by pruning: " + numSkippedEvaluations);
+			if (maxParentsRange > 0)
+				System.out.println("Number of evaluations skipped by parents' range: " + numCappedEvaluations);
+		}
+
+		evaluated = true;
+
+		return this;
+
+	}
+
+	/**
+	 * Evaluates the scores of several criteria from a single sweep over
+	 * parent sets and observations. For criteria that are the log-likelihood
+	 * minus some penalty, the log-likelihood of each family is counted once
+	 * and every criterion only subtracts its penalty; other criteria score
+	 * the same parent sets in the same sweep. Pruning depends on the
+	 * criterion, so it is not done; the limit on the parents' range is
+	 * enforced.
+	 * 
+	 * @return scores of each criterion, in the order given, ready to be
+	 *         converted to DBN
+	 */
+	public Scores[] evaluate(List<? extends ScoringFunction> criteria) {
+
+		int n = observations.numAttributes();
+
+		startEvaluation();
+
+		Scores[] results = new Scores[criteria.size()];
+		for (int c = 0; c < results.length; c++) {
+			results[c] = new Scores(observations, maxParents, stationaryProcess, verbose);
+			results[c].parentSets = parentSets;
+			results[c].candidateParentsPresent = candidateParentsPresent;
+			results[c].startSelection();
+		}
+
+		LLScoringFunction logLikelihood = new LLScoringFunction();
+
+		for (int i = 0; i < n; i++)
+			evaluateCriteria(criteria, logLikelihood, results, -1, i);
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && isCandidateParentPresent(j, i))
+					evaluateCriteria(criteria, logLikelihood, results, j, i);
+			}
+		}
+
+		for (int c = 0; c < results.length; c++) {
+			if (verbose) {
+				System.out.println(criteria.get(c) + ":");
+				results[c].printNumSolutions();
+			}
+			results[c].evaluated = true;
+		}
+		if (verbose && maxParentsRange > 0)
+			System.out.println("Number of evaluations skipped by parents' range: " + numCappedEvaluations);
+
+		return results;
+	}
+
+	/**
+	 * Evaluates the scores of every Markov lag from 1 to the lag of the
+	 * observations in a single sweep. The parent sets of a shorter lag are
+	 * those of the longest lag drawn from its most recent slices, so each
+	 * family is scored once, on the transitions of the longest lag, and every
+	 * lag selects its best parent sets among its own. As all lags are scored
+	 * on the same observations, their network scores can be compared for
+	 * model selection. Pruning compares parent sets of all lags, so it is not
+	 * done; the limit on the parents' range is enforced. If screening,
+	 * candidate parents are those of the longest lag.
+	 * 
+	 * @return scores[k-1] are the scores of lag k, ready to be converted to
+	 *         DBN
+	 */
+	public Scores[] evaluateLags(ScoringFunction sf) {
+
+		int n = observations.numAttributes();
+		int maxMarkovLag = observations.getMarkovLag();
+
+		startEvaluation();
+		boolean pruning = this.pruning;
+		this.pruning = false;
+
+		Scores[] results = new Scores[maxMarkovLag];
+		int[] minPositions = new int[maxMarkovLag];
+		int[] maxSizes = new int[maxMarkovLag];
+		for (int k = 0; k < maxMarkovLag; k++) {
+			int markovLag = k + 1;
+			results[k] = new Scores(observations.truncateLag(markovLag), maxParents, stationaryProcess, verbose);
+			results[k].parentSets = truncateParentSets(markovLag);
+			results[k].candidateParentsPresent = candidateParentsPresent;
+			results[k].startSelection();
+			// parent sets in the last k+1 slices start at the lowest position
+			minPositions[k] = (maxMarkovLag - markovLag) * n;
+			maxSizes[k] = maxParents;
+		}
+
+		evaluateSweep(sf, results, minPositions, maxSizes);
+
+		this.pruning = pruning;
+
+		for (int k = 0; k < maxMarkovLag; k++) {
+			if (verbose) {
+				System.out.println("Markov lag " + (k + 1) + ":");
+				results[k].printNumSolutions();
+			}
+			results[k].evaluated = true;
+		}
+		if (verbose && maxParentsRange > 0)
+			System.out.println("Number of evaluations skipped by parents' range: " + numCappedEvaluations);
+
+		return results;
+	}
+
+	/**
+	 * Evaluates the scores for every bound on the number of parents from
+	 * previous time slices from 1 to maxParents in a single sweep. Parent
+	 * sets are evaluated by increasing cardinality, so each family is scored
+	 * once and every bound selects its best parent sets among those of at
+	 * most its size. Pruning stays exact, as the best score a parent set is
+	 * compared with is always that of a set allowed by every bound that
+	 * allows it.
+	 * 
+	 * @return scores[p-1] are the scores with at most p parents from previous
+	 *         time slices, ready to be converted to DBN
+	 */
+	public Scores[] evaluateMaxParents(ScoringFunction sf) {
+
+		startEvaluation();
+
+		Scores[] results = new Scores[maxParents];
+		int[] minPositions = new int[maxParents];
+		int[] maxSizes = new int[maxParents];
+		for (int p = 0; p < maxParents; p++) {
+			results[p] = new Scores(observations, p + 1, stationaryProcess, verbose);
+			results[p].parentSets = parentSets;
+			results[p].candidateParentsPresent = candidateParentsPresent;
+			results[p].startSelection();
+			maxSizes[p] = p + 1;
+		}
+
+		evaluateSweep(sf, results, minPositions, maxSizes);
+
+		for (int p = 0; p < maxParents; p++) {
+			if (verbose) {
+				System.out.println("At most " + (p + 1) + " parents:");
+				results[p].printNumSolutions();
+			}
+			results[p].evaluated = true;
+		}
+		if (verbose) {
+			if (pruning)
+				System.out.println("Number of evaluations skipped by pruning: " + numSkippedEvaluations);
+			if (maxParentsRange > 0)
+				System.out.println("Number of evaluations skipped by parents' range: " + numCappedEvaluations);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Evaluates the parent sets of every family once and selects the best
+	 * ones of each result among the parent sets it allows.
+	 * 
+	 * @param minPositions
+	 *            results[r] only allows parent sets whose lowest position is
+	 *            at least minPositions[r]
+	 * @param maxSizes
+	 *            results[r] only allows parent sets of at most maxSizes[r]
+	 *            nodes
+	 */
+	private void evaluateSweep(ScoringFunction sf, Scores[] results, int[] minPositions, int[] maxSizes) {
+
+		int n = observations.numAttributes();
+
+		for (int i = 0; i < n; i++)
+			evaluateSweep(sf, results, minPositions, maxSizes, -1, i);
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && isCandidateParentPresent(j, i))
+					evaluateSweep(sf, results, minPositions, maxSizes, j, i);
+			}
+		}
+	}
+
+	private void evaluateSweep(ScoringFunction sf, Scores[] results, int[] minPositions, int[] maxSizes,
+			int parentNodePresent, int childNode) {
+
+		int[][] childParentSetArrays = parentSetArrays[childNode];
+
+		double[][] scores = evaluateParentSets(sf, parentNodePresent, childNode);
+		for (int r = 0; r < results.length; r++) {
+			double[][] allowedScores = new double[scores.length][];
+			for (int index = 0; index < scores.length; index++) {
+				int[] parentSet = childParentSetArrays[index];
+				if (parentSet[0] >= minPositions[r] && parentSet.length <= maxSizes[r])
+					allowedScores[index] = scores[index];
+			}
+			results[r].selectParentSets(allowedScores, parentNodePresent, childNode);
+		}
+	}
+
+	/**
+	 * Converts the parent sets of every node to positions of a shorter lag.
+	 * Parent sets not drawn from its slices are null.
+	 */
+	private List<List<List<Integer>>> truncateParentSets(int markovLag) {
+
+		int n = observations.numAttributes();
+		int from = (observations.getMarkovLag() - markovLag) * n;
+
+		List<List<List<Integer>>> truncated = new ArrayList<List<List<Integer>>>(n);
+		for (int i = 0; i < n; i++) {
+			// parent sets shared by all nodes are converted once
+			if (i > 0 && parentSets.get(i) == parentSets.get(i - 1)) {
+				truncated.add(truncated.get(i - 1));
+				continue;
+			}
+			List<List<Integer>> childParentSets = new ArrayList<List<Integer>>(parentSets.get(i).size());
+			for (List<Integer> parentSet : parentSets.get(i)) {
+				if (parentSet.get(0) < from) {
+					childParentSets.add(null);
+					continue;
 				}
+				List<Integer> truncatedSet = new ArrayList<Integer>(parentSet.size());
+				for (int node : parentSet)
+					truncatedSet.add(node - from);
+				childParentSets.add(truncatedSet);
 			}
+			truncated.add(childParentSets);
+		}
+		return truncated;
+	}
 
-			for (int i = 0; i < n; i++) {
-				for (int j = 0; j < n; j++) {
-					if (i != j) {
-						double bestScore = Double.NEGATIVE_INFINITY;
-						for (List<Integer> parentSet : parentSets) {
-							double score = stationaryProcess ? sf.evaluate(observations, parentSet, j, i) : sf
-									.evaluate(observations, t, parentSet, j, i);
-							// System.out.println("Xi:" + i + " Xj:" + j +
-							// " ps:" + parentSet + " score:" + score);
-							if (bestScore < score) {
-								bestScore = score;
-								parentNodes.get(t).get(i).set(j, parentSet);
-								numBestScores[i][j] = 1;
-							} else if (bestScore == score)
-								numBestScores[i][j]++;
-						}
-
-						scoresMatrix[t][i][j] += bestScore;
+	/**
+	 * Evaluates the parent sets of a child with every criterion, counting the
+	 * log-likelihood at most once, and selects the best ones of each.
+	 */
+	private void evaluateCriteria(List<? extends ScoringFunction> criteria, LLScoringFunction logLikelihood,
+			Scores[] results, int parentNodePresent, int childNode) {
+
+		double[][] logLikelihoods = null;
+		for (int c = 0; c < results.length; c++) {
+			ScoringFunction sf = criteria.get(c);
+			double[][] scores;
+			if (sf instanceof LLScoringFunction) {
+				if (logLikelihoods == null)
+					logLikelihoods = evaluateParentSets(logLikelihood, parentNodePresent, childNode);
+				scores = penalize((LLScoringFunction) sf, logLikelihoods, parentNodePresent, childNode);
+			} else
+				scores = evaluateParentSets(sf, parentNodePresent, childNode);
+			results[c].selectParentSets(scores, parentNodePresent, childNode);
+		}
+	}
+
+	/**
+	 * Subtracts the penalty of a criterion from the log-likelihood of every
+	 * parent set of a child.
+	 * 
+	 * @param logLikelihoods
+	 *            logLikelihoods[index][t] is the log-likelihood of parent set
+	 *            index in transition t, or null if it was skipped
+	 * @return the scores of the criterion, in the same layout
+	 */
+	private double[][] penalize(LLScoringFunction criterion, double[][] logLikelihoods, int parentNodePresent,
+			int childNode) {
+
+		double[][] scores = new double[logLikelihoods.length][];
+		for (int index = 0; index < scores.length; index++) {
+			if (logLikelihoods[index] == null)
+				continue;
+			LocalConfiguration c = new LocalConfiguration(observations.getAttributes(),
+					observations.getMarkovLag(), parentSetArrays[childNode][index], parentNodePresent, childNode);
+			scores[index] = new double[logLikelihoods[index].length];
+			for (int t = 0; t < scores[index].length; t++) {
+				scores[index][t] = logLikelihoods[index][t];
+				// regularizer term
+				scores[index][t] -= criterion.penalty(observations, stationaryProcess ? -1 : t, c);
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * Generates the parent sets and resets the statistics of an evaluation.
+	 */
+	private void startEvaluation() {
+
+		generateParentSets();
+		startSelection();
+
+		numSkippedEvaluations = 0;
+		numCappedEvaluations = 0;
+	}
 
+	private void startSelection() {
+		int n = observations.numAttributes();
+		int numTransitions = scoresMatrix.length;
+		numBestScoresPast = new int[numTransitions][n];
+		numBestScores = new int[numTransitions][n][n];
+	}
+
+	/**
+	 * Keeps, in each transition, the first parent set of a child in the order
+	 * of parentSets with the best score, and adds the score to the scores
+	 * matrix.
+	 * 
+	 * @param scores
+	 *            scores[index][t] is the score of parent set index in
+	 *            transition t, or null if it was skipped
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 */
+	private void selectParentSets(double[][] scores, int parentNodePresent, int childNode) {
+
+		int n = observations.numAttributes();
+		int numTransitions = scoresMatrix.length;
+		int i = childNode;
+		int j = parentNodePresent;
+
+		double[] bestScore = new double[numTransitions];
+		Arrays.fill(bestScore, Double.NEGATIVE_INFINITY);
+
+		for (int index = 0; index < scores.length; index++) {
+			List<Integer> parentSet = parentSets.get(i).get(index);
+			double[] score = scores[index];
+			// skipped by pruning
+			if (score == null)
+				continue;
+			// System.out.println("Xi:" + i + " Xj:" + j + " ps:" +
+			// parentSet + " score:" + Arrays.toString(score));
+			for (int t = 0; t < numTransitions; t++) {
+				if (bestScore[t] < score[t]) {
+					bestScore[t] = score[t];
+					if (j < 0) {
+						parentNodesPast.get(t).set(i, parentSet);
+						numBestScoresPast[t][i] = 1;
+					} else {
+						parentNodes.get(t).get(i).set(j, parentSet);
+						numBestScores[t][i][j] = 1;
 					}
+				} else if (bestScore[t] == score[t]) {
+					if (j < 0)
+						numBestScoresPast[t][i]++;
+					else
+						numBestScores[t][i][j]++;
 				}
 			}
+		}
 
-			if (verbose) {
-				// System.out.println(Arrays.toString(numBestScoresPast));
-				// System.out.println(Arrays.deepToString(numBestScores));
-				long numSolutions = 1;
-				for (int i = 0; i < n; i++)
-					numSolutions *= numBestScoresPast[i];
-				for (int i = 0; i < n; i++)
-					for (int j = 0; j < n; j++)
-						if (i != j)
-							numSolutions *= numBestScores[i][j];
-				System.out.println("Number of networks with max score: " + numSolutions);
+		for (int t = 0; t < numTransitions; t++) {
+			if (j < 0)
+				for (int k = 0; k < n; k++)
+					scoresMatrix[t][i][k] = -bestScore[t];
+			else
+				scoresMatrix[t][i][j] += bestScore[t];
+		}
+	}
+
+	private void printNumSolutions() {
+		int n = observations.numAttributes();
+		for (int t = 0; t < scoresMatrix.length; t++) {
+			// System.out.println(Arrays.toString(numBestScoresPast[t]));
+			// System.out.println(Arrays.deepToString(numBestScores[t]));
+			long numSolutions = 1;
+			for (int i = 0; i < n; i++)
+				numSolutions *= numBestScoresPast[t][i];
+			for (int i = 0; i < n; i++)
+				for (int j = 0; j < n; j++)
+					if (i != j && isCandidateParentPresent(j, i))
+						numSolutions *= numBestScores[t][i][j];
+			System.out.println("Number of networks with max score: " + numSolutions);
+		}
+	}
+
+	/**
+	 * Generates the parent sets of every node. If screening, the parent sets
+	 * of each node are drawn only from its candidate parents.
+	 */
+	private void generateParentSets() {
+
+		int n = observations.numAttributes();
+		int markovLag = observations.getMarkovLag();
+
+		parentSets = new ArrayList<List<List<Integer>>>(n);
+		evaluationOrder = new int[n][];
+		parentSetArrays = new int[n][][];
+
+		if (numCandidateParents <= 0) {
+			candidateParentsPresent = null;
+			int[] nodes = new int[n * markovLag];
+			for (int k = 0; k < nodes.length; k++)
+				nodes[k] = k;
+			List<List<Integer>> allParentSets = generateParentSets(nodes);
+			int[] order = generateEvaluationOrder(allParentSets, nodes);
+			int[][] arrays = toArrays(allParentSets);
+			for (int i = 0; i < n; i++) {
+				parentSets.add(allParentSets);
+				evaluationOrder[i] = order;
+				parentSetArrays[i] = arrays;
 			}
+			return;
+		}
 
+		// mutual information of each child with every position, from a single
+		// pass over the observations; not needed if no node is screened out
+		int[] childIndices = new int[n];
+		for (int i = 0; i < n; i++)
+			childIndices[i] = n * markovLag + i;
+		int[] allIndices = new int[n * (markovLag + 1)];
+		for (int k = 0; k < allIndices.length; k++)
+			allIndices[k] = k;
+		double[][] mutualInformation = n * markovLag > numCandidateParents ? observations.mutualInformation(
+				childIndices, allIndices) : null;
+
+		candidateParentsPresent = new int[n][];
+		for (int i = 0; i < n; i++) {
+			double[] childMutualInformation = mutualInformation != null ? mutualInformation[i] : null;
+
+			int[] pastNodes = new int[n * markovLag];
+			for (int k = 0; k < pastNodes.length; k++)
+				pastNodes[k] = k;
+			int[] nodes = screenCandidates(pastNodes, childMutualInformation, 0);
+			List<List<Integer>> childParentSets = generateParentSets(nodes);
+			parentSets.add(childParentSets);
+			evaluationOrder[i] = generateEvaluationOrder(childParentSets, nodes);
+			parentSetArrays[i] = toArrays(childParentSets);
+
+			int[] presentNodes = new int[n - 1];
+			for (int k = 0; k < presentNodes.length; k++)
+				presentNodes[k] = k < i ? k : k + 1;
+			candidateParentsPresent[i] = screenCandidates(presentNodes, childMutualInformation, n * markovLag);
 		}
+	}
 
-		evaluated = true;
+	/**
+	 * Keeps the numCandidateParents nodes with the highest mutual information
+	 * with the child, ties broken by the lowest node.
+	 * 
+	 * @param nodes
+	 *            nodes to screen, in increasing order
+	 * @param childMutualInformation
+	 *            mutual information of the child with each position of the
+	 *            configuration array
+	 * @param offset
+	 *            position of node 0 in the configuration array
+	 * @return the candidate nodes, in increasing order
+	 */
+	private int[] screenCandidates(int[] nodes, double[] childMutualInformation, int offset) {
 
-		return this;
+		if (nodes.length <= numCandidateParents)
+			return nodes;
+
+		final double[] mutualInformation = new double[nodes.length];
+		List<Integer> positions = new ArrayList<Integer>(nodes.length);
+		for (int k = 0; k < nodes.length; k++) {
+			mutualInformation[k] = childMutualInformation[offset + nodes[k]];
+			positions.add(k);
+		}
+
+		// stable, so ties keep the lowest node first
+		Collections.sort(positions, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer k1, Integer k2) {
+				return Double.compare(mutualInformation[k2], mutualInformation[k1]);
+			}
+		});
+
+		int[] candidates = new int[numCandidateParents];
+		for (int k = 0; k < numCandidateParents; k++)
+			candidates[k] = nodes[positions.get(k)];
+		Arrays.sort(candidates);
+		return candidates;
+	}
 
+	private static int[][] toArrays(List<List<Integer>> sets) {
+		int[][] arrays = new int[sets.size()][];
+		for (int i = 0; i < arrays.length; i++)
+			arrays[i] = LocalConfiguration.toArray(sets.get(i));
+		return arrays;
+	}
+
+	/**
+	 * Checks if Xj[t+markovLag] is a candidate parent of Xi[t+markovLag].
+	 */
+	private boolean isCandidateParentPresent(int j, int i) {
+		return candidateParentsPresent == null || Arrays.binarySearch(candidateParentsPresent[i], j) >= 0;
+	}
+
+	/**
+	 * Generates all sets of nodes with cardinality in [1, maxParents], in
+	 * lexicographic order.
+	 * 
+	 * @param nodes
+	 *            nodes in increasing order
+	 */
+	private List<List<Integer>> generateParentSets(int[] nodes) {
+
+		int m = nodes.length;
+		int p = Math.min(maxParents, m);
+
+		// calculate sum_i=1^k nCi
+		int size = m;
+		for (int previous = m, i = 2; i <= p; i++) {
+			int current = previous * (m - i + 1) / i;
+			size += current;
+			previous = current;
+		}
+		// TODO: check for size overflow
+
+		List<List<Integer>> sets = new ArrayList<List<Integer>>(size);
+		for (int i = 1; i <= p; i++) {
+			generateCombinations(m, i, sets);
+		}
+
+		for (List<Integer> set : sets)
+			for (int k = 0; k < set.size(); k++)
+				set.set(k, nodes[set.get(k)]);
+
+		return sets;
+	}
+
+	/**
+	 * Orders the evaluation of parent sets by cardinality and, within the
+	 * same cardinality, in revolving-door order.
+	 * 
+	 * @param sets
+	 *            parent sets generated from nodes
+	 * @param nodes
+	 *            nodes in increasing order
+	 * @return indices into sets, in evaluation order
+	 */
+	private int[] generateEvaluationOrder(List<List<Integer>> sets, int[] nodes) {
+
+		Map<List<Integer>, Integer> setIndices = new HashMap<List<Integer>, Integer>(
+				(int) Math.ceil(sets.size() / 0.75));
+		for (int i = 0; i < sets.size(); i++)
+			setIndices.put(sets.get(i), i);
+
+		int m = nodes.length;
+		int p = Math.min(maxParents, m);
+
+		int[] order = new int[sets.size()];
+		int index = 0;
+		for (int i = 1; i <= p; i++)
+			for (List<Integer> combination : generateRevolvingDoorCombinations(m, i)) {
+				for (int k = 0; k < combination.size(); k++)
+					combination.set(k, nodes[combination.get(k)]);
+				order[index++] = setIndices.get(combination);
+			}
+		return order;
+	}
+
+	/**
+	 * Evaluates the scores of all parent sets of a child, in evaluationOrder.
+	 * If pruning, a parent set is skipped, and its score set to null, when
+	 * its upper bound is below the best score found so far in every
+	 * transition. The bound of a superset is never higher, so such a set
+	 * cannot be optimal and skipping it leaves the optimum, and its ties,
+	 * unchanged. Parent sets with more configurations than maxParentsRange are
+	 * skipped as well, unless they have a single parent from previous time
+	 * slices, so every family keeps some score. Parent sets of the same
+	 * cardinality are scored in blocks of up to BLOCK_SIZE, so the scoring
+	 * function can share work across them.
+	 */
+	private double[][] evaluateParentSets(ScoringFunction sf, int parentNodePresent, int childNode) {
+
+		List<List<Integer>> childParentSets = parentSets.get(childNode);
+		int[][] childParentSetArrays = parentSetArrays[childNode];
+		double[][] scores = new double[childParentSets.size()][];
+
+		int numTransitions = scoresMatrix.length;
+		PenalizedScoringFunction bounded = null;
+		if (pruning && sf instanceof PenalizedScoringFunction)
+			bounded = (PenalizedScoringFunction) sf;
+
+		double[] bestScore = new double[numTransitions];
+		Arrays.fill(bestScore, Double.NEGATIVE_INFINITY);
+
+		List<Integer> blockIndices = new ArrayList<Integer>(BLOCK_SIZE);
+
+		for (int index : evaluationOrder[childNode]) {
+			int[] parentSet = childParentSetArrays[index];
+
+			// block is full or parent set has a different cardinality
+			boolean sameCardinality = blockIndices.isEmpty()
+					|| childParentSetArrays[blockIndices.get(0)].length == parentSet.length;
+			if (blockIndices.size() == BLOCK_SIZE || !sameCardinality)
+				evaluateBlock(sf, parentNodePresent, childNode, blockIndices, scores, bestScore);
+
+			// one configuration per parent set, for all transitions
+			LocalConfiguration c = null;
+			if ((maxParentsRange > 0 && parentSet.length > 1) || bounded != null)
+				c = new LocalConfiguration(observations.getAttributes(), observations.getMarkovLag(), parentSet,
+						parentNodePresent, childNode);
+
+			if (maxParentsRange > 0 && parentSet.length > 1 && c.getNumParentConfigurations() > maxParentsRange) {
+				scores[index] = null;
+				numCappedEvaluations++;
+				continue;
+			}
+
+			if (bounded != null) {
+				boolean dominated = true;
+				for (int t = 0; t < numTransitions && dominated; t++) {
+					double bound = bounded.upperBound(observations, stationaryProcess ? -1 : t, c);
+					dominated = bound < bestScore[t];
+				}
+				if (dominated) {
+					scores[index] = null;
+					numSkippedEvaluations++;
+					continue;
+				}
+			}
+
+			blockIndices.add(index);
+		}
+		evaluateBlock(sf, parentNodePresent, childNode, blockIndices, scores, bestScore);
+
+		return scores;
+	}
+
+	/**
+	 * Evaluates a block of parent sets of a child, storing their scores and
+	 * updating the best score of each transition, and empties the block.
+	 * 
+	 * @param blockIndices
+	 *            indices into parentSets.get(childNode) of the block
+	 */
+	private void evaluateBlock(ScoringFunction sf, int parentNodePresent, int childNode,
+			List<Integer> blockIndices, double[][] scores, double[] bestScore) {
+
+		if (blockIndices.isEmpty())
+			return;
+
+		int[][] block = new int[blockIndices.size()][];
+		for (int b = 0; b < block.length; b++)
+			block[b] = parentSetArrays[childNode][blockIndices.get(b)];
+
+		double[][] blockScores = evaluateBlock(sf, block, parentNodePresent, childNode);
+		for (int b = 0; b < blockScores.length; b++) {
+			for (int t = 0; t < bestScore.length; t++)
+				if (bestScore[t] < blockScores[b][t])
+					bestScore[t] = blockScores[b][t];
+			scores[blockIndices.get(b)] = blockScores[b];
+		}
+		blockIndices.clear();
+	}
+
+	/**
+	 * Evaluates the scores of a block of parent sets of a child in every
+	 * transition with a single call to the scoring function. If the process
+	 * is stationary, there is a single score for all transitions.
+	 * 
+	 * @return scores[b] is the array of scores of block[b]
+	 */
+	private double[][] evaluateBlock(ScoringFunction sf, int[][] block, int parentNodePresent, int childNode) {
+		double[][] scores = new double[block.length][];
+		if (stationaryProcess) {
+			double[] stationaryScores = new double[block.length];
+			sf.evaluate(observations, block, parentNodePresent, childNode, stationaryScores);
+			for (int b = 0; b < scores.length; b++)
+				scores[b] = new double[] { stationaryScores[b] };
+		} else
+			sf.evaluateTransitions(observations, block, parentNodePresent, childNode, scores);
+		return scores;
 	}
 
 	// adapted from http://stackoverflow.com/a/7631893
-	private void generateCombinations(int n, int k) {
+	private static void generateCombinations(int n, int k, List<List<Integer>> combinations) {
 
 		int[] comb = new int[k];
 		for (int i = 0; i < comb.length; i++) {
@@ -200,7 +888,7 @@ public class Scores {
 			for (int i : comb) {
 				intList.add(i);
 			}
-			this.parentSets.add(intList);
+			combinations.add(intList);
 
 			int target = k - 1;
 			comb[target]++;
@@ -224,6 +912,96 @@ public class Scores {
 		}
 	}
 
+	/**
+	 * Generates all k-combinations of {0, ..., n-1} in revolving-door order,
+	 * where consecutive combinations differ by swapping a single element. The
+	 * combinations of {0, ..., n-1} are those of {0, ..., n-2}, followed by
+	 * the (k-1)-combinations of {0, ..., n-2} in reverse order, each with n-1
+	 * added.
+	 */
+	private static List<List<Integer>> generateRevolvingDoorCombinations(int n, int k) {
+
+		List<List<Integer>> combinations = new ArrayList<List<Integer>>();
+
+		if (k == 0) {
+			combinations.add(new ArrayList<Integer>(0));
+		} else if (k == n) {
+			List<Integer> all = new ArrayList<Integer>(n);
+			for (int i = 0; i < n; i++)
+				all.add(i);
+			combinations.add(all);
+		} else if (k < n) {
+			combinations.addAll(generateRevolvingDoorCombinations(n - 1, k));
+			List<List<Integer>> withLast = generateRevolvingDoorCombinations(n - 1, k - 1);
+			Collections.reverse(withLast);
+			for (List<Integer> combination : withLast) {
+				combination.add(n - 1);
+				combinations.add(combination);
+			}
+		}
+
+		return combinations;
+	}
+
+	/**
+	 * Restricts the parents of each node to the numCandidateParents nodes
+	 * with the highest mutual information with it, both in previous time
+	 * slices and in the same time slice. Arcs from other nodes are never
+	 * evaluated nor considered for the optimum branching. Not screened if not
+	 * positive.
+	 */
+	public void setNumCandidateParents(int numCandidateParents) {
+		this.numCandidateParents = numCandidateParents;
+	}
+
+	/**
+	 * Enables or disables pruning of parent sets by branch and bound. Only
+	 * has effect when evaluating with a penalized score, such as MDL or AIC.
+	 * The bound only uses the log-likelihood not being positive, so little is
+	 * pruned on larger datasets.
+	 */
+	public void setPruning(boolean pruning) {
+		this.pruning = pruning;
+	}
+
+	/**
+	 * Returns the number of parent set evaluations skipped by pruning in the
+	 * last evaluation.
+	 */
+	public long getNumSkippedEvaluations() {
+		return numSkippedEvaluations;
+	}
+
+	/**
+	 * Sets an upper limit on the number of parents' configurations of the
+	 * families evaluated, skipping parent sets whose range would make their
+	 * MDL penalty overwhelming. Families with a single parent from previous
+	 * time slices are always evaluated. Not enforced if not positive.
+	 */
+	public void setMaxParentsRange(long maxParentsRange) {
+		this.maxParentsRange = maxParentsRange;
+	}
+
+	/**
+	 * Returns the number of parent set evaluations skipped by the limit on
+	 * the number of parents' configurations in the last evaluation.
+	 */
+	public long getNumCappedEvaluations() {
+		return numCappedEvaluations;
+	}
+
+	/**
+	 * Returns the score of the network of each transition found by the last
+	 * conversion to DBN.
+	 */
+	public double[] getNetworkScores() {
+		return networkScores;
+	}
+
+	public Observations getObservations() {
+		return observations;
+	}
+
 	public double[][] getScoresMatrix(int transition) {
 		return scoresMatrix[transition];
 	}
@@ -242,31 +1020,33 @@ public class Scores {
 		int numTransitions = scoresMatrix.length;
 
 		List<BayesNet> transitionNets = new ArrayList<BayesNet>(numTransitions);
+		networkScores = new double[numTransitions];
 
 		for (int t = 0; t < numTransitions; t++) {
 
-			List<Edge> intraRelations = OptimumBranching.evaluate(scoresMatrix[t], root, spanning);
+			List<Edge> intraRelations = OptimumBranching.evaluate(scoresMatrix[t], candidateParentsPresent, root,
+					spanning);
 
-			if (verbose) {
-				double score = 0;
-				boolean[][] adj = Utils.adjacencyMatrix(intraRelations, n);
-
-				for (int i = 0; i < n; i++) {
-					boolean isRoot = true;
-					for (int j = 0; j < n; j++) {
-						if (adj[i][j]) {
-							// score
-							score += (scoresMatrix[t][i][j] - scoresMatrix[t][i][i]);
-							isRoot = false;
-						}
+			double score = 0;
+			boolean[][] adj = Utils.adjacencyMatrix(intraRelations, n);
+
+			for (int i = 0; i < n; i++) {
+				boolean isRoot = true;
+				for (int j = 0; j < n; j++) {
+					if (adj[i][j]) {
+						// score
+						score += (scoresMatrix[t][i][j] - scoresMatrix[t][i][i]);
+						isRoot = false;
 					}
-					if (isRoot)
-						// subtract since sign was inverted
-						score -= scoresMatrix[t][i][i];
 				}
+				if (isRoot)
+					// subtract since sign was inverted
+					score -= scoresMatrix[t][i][i];
+			}
 
+			networkScores[t] = score;
+			if (verbose)
 				System.out.println("Network score: " + score);
-			}
 
 			List<Edge> interRelations = new ArrayList<Edge>(n * maxParents);
 
@@ -2,6 +2,13 @@ package com.github.tDBN.dbn;
 
 import java.util.List;
 
+/**
+ * Scores of a family, given by a child node and its parents. The parents in
+ * previous time slices are given as positions in [0, markovLag*n[ and the
+ * parent in the same time slice, if any, as a node in [0, n[. Methods taking
+ * primitive arrays and -1 for no parent in the same time slice are the ones
+ * used when learning; the ones taking lists are adapters.
+ */
 public interface ScoringFunction {
 
 	public abstract double evaluate(Observations observations, int transition, List<Integer> parentNodesPast,
@@ -10,6 +17,16 @@ public interface ScoringFunction {
 	public abstract double evaluate(Observations observations, int transition, List<Integer> parentNodesPast,
 			Integer parentNodePresent, int childNode);
 
+	/**
+	 * Calculate score in some transition, or in all transitions if
+	 * transition is negative.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 */
+	public abstract double evaluate(Observations observations, int transition, int[] parentNodesPast,
+			int parentNodePresent, int childNode);
+
 	/**
 	 * Calculate score when process is stationary.
 	 */
@@ -21,4 +38,83 @@ public interface ScoringFunction {
 	 */
 	public abstract double evaluate(Observations observations, List<Integer> parentNodesPast, int childNode);
 
+	/**
+	 * Calculate score when process is stationary.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 */
+	public abstract double evaluate(Observations observations, int[] parentNodesPast, int parentNodePresent,
+			int childNode);
+
+	/**
+	 * Calculate score in every transition when process is not stationary,
+	 * counting observations of all transitions together.
+	 * 
+	 * @return array with the score of each transition
+	 */
+	public abstract double[] evaluateTransitions(Observations observations, List<Integer> parentNodesPast,
+			Integer parentNodePresent, int childNode);
+
+	/**
+	 * Calculate score in every transition when process is not stationary,
+	 * counting observations of all transitions together.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 * @return array with the score of each transition
+	 */
+	public abstract double[] evaluateTransitions(Observations observations, int[] parentNodesPast,
+			int parentNodePresent, int childNode);
+
+	/**
+	 * Calculate the scores of a block of parent sets of the same child when
+	 * process is stationary, sharing work across the block.
+	 * 
+	 * @param scores
+	 *            array where scores[b] is set to the score of
+	 *            parentSetsPast.get(b)
+	 */
+	public abstract void evaluate(Observations observations, List<List<Integer>> parentSetsPast,
+			Integer parentNodePresent, int childNode, double[] scores);
+
+	/**
+	 * Calculate the scores of a block of parent sets of the same child when
+	 * process is stationary, sharing work across the block.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 * @param scores
+	 *            array where scores[b] is set to the score of
+	 *            parentSetsPast[b]
+	 */
+	public abstract void evaluate(Observations observations, int[][] parentSetsPast, int parentNodePresent,
+			int childNode, double[] scores);
+
+	/**
+	 * Calculate the scores of a block of parent sets of the same child in
+	 * every transition when process is not stationary, sharing work across
+	 * the block.
+	 * 
+	 * @param scores
+	 *            array where scores[b] is set to the array with the score of
+	 *            parentSetsPast.get(b) in each transition
+	 */
+	public abstract void evaluateTransitions(Observations observations, List<List<Integer>> parentSetsPast,
+			Integer parentNodePresent, int childNode, double[][] scores);
+
+	/**
+	 * Calculate the scores of a block of parent sets of the same child in
+	 * every transition when process is not stationary, sharing work across
+	 * the block.
+	 * 
+	 * @param parentNodePresent
+	 *            parent node in the same time slice, or -1 if there is none
+	 * @param scores
+	 *            array where scores[b] is set to the array with the score of
+	 *            parentSetsPast[b] in each transition
+	 */
+	public abstract void evaluateTransitions(Observations observations, int[][] parentSetsPast,
+			int parentNodePresent, int childNode, double[][] scores);
+
 }
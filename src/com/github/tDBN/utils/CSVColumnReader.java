@@ -0,0 +1,176 @@
+package com.github.tDBN.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads CSV records keeping only some of their fields. Fields that are not
+ * kept are scanned for separators and quotes, but their characters are not
+ * copied and no string is built for them, so wide files can be read for a
+ * few of their columns at the cost of a single scan.
+ * <p>
+ * Parsing follows the rules of opencsv's CSVReader with its default settings:
+ * comma separator, double quote as quote character, backslash as escape
+ * character, doubled quotes inside quoted fields, and quoted fields that span
+ * several lines.
+ * 
+ * @author zlm
+ * 
+ */
+public class CSVColumnReader {
+
+	private static final char SEPARATOR = ',';
+
+	private static final char QUOTE = '"';
+
+	private static final char ESCAPE = '\\';
+
+	private BufferedReader reader;
+
+	private StringBuilder sb = new StringBuilder();
+
+	private int numFields = 0;
+
+	/**
+	 * If the last character scanned belongs to an unquoted field. As in
+	 * opencsv, it is not reset between records, and it decides if an escape
+	 * or a doubled quote at the start of a record is taken literally.
+	 */
+	private boolean inField = false;
+
+	public CSVColumnReader(Reader reader) {
+		this.reader = new BufferedReader(reader);
+	}
+
+	/**
+	 * Reads the next record, keeping all of its fields.
+	 * 
+	 * @return the fields of the record, or null at the end of the input
+	 */
+	public String[] readNext() throws IOException {
+		return readNext(null);
+	}
+
+	/**
+	 * Reads the next record, keeping only some of its fields. Kept fields
+	 * that are not present in the record are returned as null.
+	 * 
+	 * @param fields
+	 *            indices of the fields to keep, in increasing order, or null
+	 *            to keep all fields
+	 * @return the kept fields, in the order of fields, or null at the end of
+	 *         the input
+	 */
+	public String[] readNext(int[] fields) throws IOException {
+
+		String line = reader.readLine();
+		if (line == null)
+			return null;
+
+		String[] record = new String[fields != null ? fields.length : 16];
+		int numKept = 0;
+		int field = 0;
+		// position in fields of the next field to keep
+		int next = 0;
+		boolean keep = fields == null || fields.length > 0 && fields[0] == 0;
+		boolean inQuotes = false;
+		sb.setLength(0);
+
+		while (true) {
+			int length = line.length();
+			for (int i = 0; i < length; i++) {
+				char c = line.charAt(i);
+				if (c == ESCAPE) {
+					// an escape that does not precede a quote or escape is
+					// dropped, as opencsv does
+					if ((inQuotes || inField) && i + 1 < length
+							&& (line.charAt(i + 1) == QUOTE || line.charAt(i + 1) == ESCAPE)) {
+						if (keep)
+							sb.append(line.charAt(i + 1));
+						i++;
+					}
+				} else if (c == QUOTE) {
+					if ((inQuotes || inField) && i + 1 < length && line.charAt(i + 1) == QUOTE) {
+						if (keep)
+							sb.append(QUOTE);
+						i++;
+					} else {
+						// a quote in the middle of a field is kept
+						if (i > 2 && line.charAt(i - 1) != SEPARATOR && i + 1 < length
+								&& line.charAt(i + 1) != SEPARATOR && keep) {
+							if (sb.length() > 0 && isAllWhiteSpace(sb))
+								sb.setLength(0);
+							else
+								sb.append(c);
+						}
+						inQuotes = !inQuotes;
+					}
+					inField = !inField;
+				} else if (c == SEPARATOR && !inQuotes) {
+					if (keep) {
+						record = add(record, numKept++, sb.toString());
+						sb.setLength(0);
+						next++;
+					}
+					field++;
+					keep = fields == null || next < fields.length && fields[next] == field;
+					inField = false;
+				} else {
+					if (keep)
+						sb.append(c);
+					inField = true;
+				}
+			}
+
+			if (!inQuotes)
+				break;
+			// quoted field continues in the next line
+			line = reader.readLine();
+			if (line == null) {
+				// unterminated quoted field at the end of the input is
+				// dropped, as opencsv does
+				numFields = field;
+				if (field == 0)
+					return null;
+				return fields != null ? record : Arrays.copyOf(record, numKept);
+			}
+			if (keep)
+				sb.append('\n');
+		}
+
+		if (keep)
+			record = add(record, numKept++, sb.toString());
+		numFields = field + 1;
+
+		return fields != null ? record : Arrays.copyOf(record, numKept);
+	}
+
+	/**
+	 * Returns the number of fields of the last record read, including the
+	 * ones that were not kept.
+	 */
+	public int getNumFields() {
+		return numFields;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private static String[] add(String[] record, int index, String value) {
+		if (index == record.length)
+			record = Arrays.copyOf(record, 2 * record.length);
+		record[index] = value;
+		return record;
+	}
+
+	private static boolean isAllWhiteSpace(CharSequence sb) {
+		for (int i = 0; i < sb.length(); i++)
+			if (!Character.isWhitespace(sb.charAt(i)))
+				return false;
+		return true;
+	}
+
+}